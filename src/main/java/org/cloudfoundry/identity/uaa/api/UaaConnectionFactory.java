@@ -17,18 +17,23 @@ package org.cloudfoundry.identity.uaa.api;
 
 import java.net.URL;
 
+import org.cloudfoundry.identity.uaa.api.common.AsyncUaaConnection;
 import org.cloudfoundry.identity.uaa.api.common.UaaConnection;
-import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
-import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionImpl;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionRegistry;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
 import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
 
 /**
- * The initial entry point for the API classes
+ * The initial entry point for the API classes. Connections to the same server with the same credentials share one
+ * pool of HTTP connections and one access token; each connection returned must be closed when it is no longer needed,
+ * and the shared resources are released when the last one is.
  * 
  * @author Josh Ghiloni
- *
+ * 
  */
 public final class UaaConnectionFactory {
+	private static final UaaConnectionRegistry REGISTRY = new UaaConnectionRegistry();
+
 	private UaaConnectionFactory() {
 
 	}
@@ -42,7 +47,53 @@ public final class UaaConnectionFactory {
 	 * @return the connection entry point
 	 */
 	public static UaaConnection getConnection(URL uaaUrl, UaaCredentials credentials) {
-		UaaConnectionHelper helper = new UaaConnectionHelper(uaaUrl, credentials);
-		return new UaaConnectionImpl(helper);
+		return getConnection(uaaUrl, credentials, new UaaConnectionSettings());
+	}
+
+	/**
+	 * Get a connection object for the given UAA server, from which you can get access to different API operations.
+	 * All operations obtained from the connection share a single pool of keep-alive HTTP connections configured by
+	 * <code>settings</code>.
+	 * 
+	 * @param uaaUrl the base {@link URL} of the UAA server. May have a path prefix (for example,
+	 * <code>http://localhost:8080/uaa</code>)
+	 * @param credentials the {@link UaaCredentials} representing the current user. May be client-only
+	 * @param settings the {@link UaaConnectionSettings} for the underlying HTTP connection pool. If a connection to the
+	 * same server with the same credentials is already open, they must equal its settings
+	 * @return the connection entry point
+	 * @throws IllegalStateException if the connection is already open with different settings
+	 */
+	public static UaaConnection getConnection(URL uaaUrl, UaaCredentials credentials, UaaConnectionSettings settings) {
+		return REGISTRY.getConnection(uaaUrl, credentials, settings);
+	}
+
+	/**
+	 * Get a non-blocking connection object for the given UAA server. Its operations return futures and are served by a
+	 * small, fixed set of I/O threads, so many requests can be in flight at once without a thread per request.
+	 * 
+	 * @param uaaUrl the base {@link URL} of the UAA server. May have a path prefix (for example,
+	 * <code>http://localhost:8080/uaa</code>)
+	 * @param credentials the {@link UaaCredentials} representing the current user. May be client-only
+	 * @return the asynchronous connection entry point
+	 */
+	public static AsyncUaaConnection getAsyncConnection(URL uaaUrl, UaaCredentials credentials) {
+		return getAsyncConnection(uaaUrl, credentials, new UaaConnectionSettings());
+	}
+
+	/**
+	 * Get a non-blocking connection object for the given UAA server.
+	 * 
+	 * @param uaaUrl the base {@link URL} of the UAA server. May have a path prefix (for example,
+	 * <code>http://localhost:8080/uaa</code>)
+	 * @param credentials the {@link UaaCredentials} representing the current user. May be client-only
+	 * @param settings the {@link UaaConnectionSettings} for the underlying HTTP connection pool, including the maximum
+	 * number of requests in flight. If a connection to the same server with the same credentials is already open, they
+	 * must equal its settings
+	 * @return the asynchronous connection entry point
+	 * @throws IllegalStateException if the connection is already open with different settings
+	 */
+	public static AsyncUaaConnection getAsyncConnection(URL uaaUrl, UaaCredentials credentials,
+			UaaConnectionSettings settings) {
+		return REGISTRY.getAsyncConnection(uaaUrl, credentials, settings);
 	}
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.client;
+
+import org.cloudfoundry.identity.uaa.api.client.model.UaaClient;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * The non-blocking counterpart of {@link UaaClientOperations}. Failures are reported through the returned future
+ * rather than thrown.
+ */
+public interface AsyncUaaClientOperations {
+	/**
+	 * @param client the new client
+	 * @return the newly created client
+	 * @see UaaClientOperations#create(UaaClient)
+	 */
+	public ListenableFuture<UaaClient> create(UaaClient client);
+
+	/**
+	 * @param clientId the client ID
+	 * @return the client
+	 * @see UaaClientOperations#findById(String)
+	 */
+	public ListenableFuture<UaaClient> findById(String clientId);
+
+	/**
+	 * @param updated the client with new data
+	 * @return the client returned from the API
+	 * @see UaaClientOperations#update(UaaClient)
+	 */
+	public ListenableFuture<UaaClient> update(UaaClient updated);
+
+	/**
+	 * @param clientId the client ID
+	 * @return the deleted client
+	 * @see UaaClientOperations#delete(String)
+	 */
+	public ListenableFuture<UaaClient> delete(String clientId);
+
+	/**
+	 * @param request the filter
+	 * @return the clients
+	 * @see UaaClientOperations#getClients(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaClient>> getClients(FilterRequest request);
+
+	/**
+	 * @param clientId The client ID whose secret should be changed
+	 * @param oldSecret The existing secret
+	 * @param newSecret The new secret
+	 * @return true if the change was successful, false otherwise
+	 * @see UaaClientOperations#changeClientSecret(String, String, String)
+	 */
+	public ListenableFuture<Boolean> changeClientSecret(String clientId, String oldSecret, String newSecret);
+}
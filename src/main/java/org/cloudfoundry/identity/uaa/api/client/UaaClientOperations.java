@@ -15,8 +15,11 @@
  */
 package org.cloudfoundry.identity.uaa.api.client;
 
+import java.util.List;
+
 import org.cloudfoundry.identity.uaa.api.client.model.UaaClient;
 import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 
 /**
@@ -69,6 +72,69 @@ public interface UaaClientOperations {
 	 */
 	public PagedResult<UaaClient> getClients(FilterRequest request);
 
+	/**
+	 * Get a page of clients based on the given {@link FilterRequest}, handing each client to the consumer as soon as it
+	 * has been read instead of collecting them
+	 * 
+	 * @param request the {@link FilterRequest}
+	 * @param consumer receives the clients, on the calling thread
+	 * @return The paging information of the page. Its resources are null
+	 * @see #getClients(FilterRequest)
+	 */
+	public PagedResult<UaaClient> getClients(FilterRequest request, ResourceConsumer<? super UaaClient> consumer);
+
+	/**
+	 * Count the clients matching the given {@link FilterRequest}, without downloading them
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return the number of matching clients
+	 */
+	public int countClients(FilterRequest request);
+
+	/**
+	 * Check whether any client matches the given {@link FilterRequest}, without downloading it
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return true if at least one client matches
+	 * @see #countClients(FilterRequest)
+	 */
+	public boolean exists(FilterRequest request);
+
+	/**
+	 * Iterate over every client matching the given SCIM filter, fetching a page at a time as the iteration proceeds
+	 * 
+	 * @param request the filter. If it sets a count, that is the page size; otherwise the connection's page size is
+	 * used
+	 * @return the clients
+	 * @see org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings#getPageSize()
+	 */
+	public Iterable<UaaClient> iterateClients(FilterRequest request);
+
+	/**
+	 * Fetch all clients matching the given {@link FilterRequest}. After the first page, which gives the total number of
+	 * results, the remaining pages are fetched concurrently.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @return the clients, in the order the server returned them
+	 * @see #iterateClients(FilterRequest)
+	 */
+	public List<UaaClient> fetchAllClients(FilterRequest request, int parallelism);
+
+	/**
+	 * Fetch all clients matching the given {@link FilterRequest}, fetching the pages after the first concurrently and
+	 * handing each client to the consumer as soon as it has been read, in no particular order. The consumer is never
+	 * called by two threads at once.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @param consumer receives the clients
+	 * @return the number of clients delivered
+	 */
+	public int fetchAllClients(FilterRequest request, int parallelism, ResourceConsumer<? super UaaClient> consumer);
+
 	/**
 	 * Change a client's secret. Note that you MUST have the existing secret, as the APIs require it.
 	 * 
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.client.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cloudfoundry.identity.uaa.api.client.AsyncUaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.client.model.UaaClient;
+import org.cloudfoundry.identity.uaa.api.client.model.UaaClientsResults;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+
+/**
+ * @see AsyncUaaClientOperations
+ */
+public class AsyncUaaClientOperationsImpl implements AsyncUaaClientOperations {
+
+	private UaaConnectionHelper helper;
+
+	public AsyncUaaClientOperationsImpl(UaaConnectionHelper helper) {
+		this.helper = helper;
+	}
+
+	public ListenableFuture<UaaClient> create(UaaClient client) {
+		Assert.notNull(client);
+		Assert.hasText(client.getClientId());
+
+		return helper.postAsync("/oauth/clients", client, UaaClient.class);
+	}
+
+	public ListenableFuture<UaaClient> findById(String clientId) {
+		Assert.hasText(clientId);
+		return helper.getAsync("/oauth/clients/{id}", UaaClient.class, clientId);
+	}
+
+	public ListenableFuture<UaaClient> update(UaaClient client) {
+		Assert.notNull(client);
+		Assert.hasText(client.getClientId());
+
+		return helper.putAsync("/oauth/clients/{id}", client, UaaClient.class, client.getClientId());
+	}
+
+	public ListenableFuture<UaaClient> delete(String clientId) {
+		Assert.hasText(clientId);
+		return helper.deleteAsync("/oauth/clients/{id}", UaaClient.class, clientId);
+	}
+
+	public ListenableFuture<PagedResult<UaaClient>> getClients(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaClient>> widen(helper.getAsync(
+				helper.buildScimFilterUrl("/oauth/clients", request), UaaClientsResults.class));
+	}
+
+	public ListenableFuture<Boolean> changeClientSecret(String clientId, String oldSecret, String newSecret) {
+		Map<String, String> body = new HashMap<String, String>(2);
+		body.put("oldSecret", oldSecret);
+		body.put("secret", newSecret);
+
+		ListenableFuture<String> result = helper.putAsync("/oauth/clients/{id}/secret", body, String.class, clientId);
+
+		return new ListenableFutureAdapter<Boolean, String>(result) {
+			@Override
+			protected Boolean adapt(String result) {
+				return (result != null);
+			}
+		};
+	}
+}
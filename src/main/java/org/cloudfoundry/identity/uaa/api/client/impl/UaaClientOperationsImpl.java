@@ -16,12 +16,15 @@
 package org.cloudfoundry.identity.uaa.api.client.impl;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.cloudfoundry.identity.uaa.api.client.UaaClientOperations;
 import org.cloudfoundry.identity.uaa.api.client.model.UaaClient;
 import org.cloudfoundry.identity.uaa.api.client.model.UaaClientsResults;
 import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.springframework.util.Assert;
 
@@ -68,6 +71,40 @@ public class UaaClientOperationsImpl implements UaaClientOperations {
 		return helper.get(helper.buildScimFilterUrl("/oauth/clients", request), UaaClientsResults.class);
 	}
 
+	public PagedResult<UaaClient> getClients(FilterRequest request, ResourceConsumer<? super UaaClient> consumer) {
+		Assert.notNull(request);
+
+		return helper.getResources(helper.buildScimFilterUrl("/oauth/clients", request), UaaClient.class, consumer);
+	}
+
+	public int countClients(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.count("/oauth/clients", request, "client_id");
+	}
+
+	public boolean exists(FilterRequest request) {
+		return countClients(request) > 0;
+	}
+
+	public Iterable<UaaClient> iterateClients(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterate("/oauth/clients", request, UaaClientsResults.class);
+	}
+
+	public List<UaaClient> fetchAllClients(FilterRequest request, int parallelism) {
+		Assert.notNull(request);
+
+		return helper.iterate("/oauth/clients", request, UaaClientsResults.class).fetchAll(parallelism);
+	}
+
+	public int fetchAllClients(FilterRequest request, int parallelism, ResourceConsumer<? super UaaClient> consumer) {
+		Assert.notNull(request);
+
+		return helper.iterate("/oauth/clients", request, UaaClientsResults.class).fetchAll(parallelism, consumer);
+	}
+
 	public boolean changeClientSecret(String clientId, String oldSecret, String newSecret) {
 		Map<String, String> body = new HashMap<String, String>(2);
 		body.put("oldSecret", oldSecret);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common;
+
+import java.io.Closeable;
+
+import org.cloudfoundry.identity.uaa.api.client.AsyncUaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
+import org.cloudfoundry.identity.uaa.api.group.AsyncUaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.user.AsyncUaaUserOperations;
+
+/**
+ * A collection of objects to access different parts of the API without blocking. Every operation returns as soon as
+ * its request is queued, and completes its {@link org.springframework.util.concurrent.ListenableFuture} from the
+ * connection's I/O threads.
+ */
+public interface AsyncUaaConnection extends Closeable {
+	/**
+	 * @return an asynchronous entry point for client APIs
+	 */
+	public AsyncUaaClientOperations clientOperations();
+
+	/**
+	 * @return an asynchronous entry point for group APIs
+	 */
+	public AsyncUaaGroupOperations groupOperations();
+
+	/**
+	 * @return an asynchronous entry point for user APIs
+	 */
+	public AsyncUaaUserOperations userOperations();
+
+	/**
+	 * @return how often the OAuth token endpoint has been called so far for this connection's credentials, including by
+	 * other connections sharing the same token
+	 */
+	public UaaTokenStatistics getTokenStatistics();
+
+	/**
+	 * Release this connection. Connections to the same server with the same credentials are shared; once every holder
+	 * has closed it, its pooled HTTP connections are closed and its access token is no longer renewed in the
+	 * background. The connection and the operations obtained from it must not be used afterwards; once the pooled
+	 * connections are closed, requests made through those operations fail with an {@link IllegalStateException}.
+	 * Calling this more than once has no further effect.
+	 */
+	public void close();
+}
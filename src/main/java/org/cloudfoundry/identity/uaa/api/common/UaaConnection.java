@@ -15,7 +15,10 @@
  */
 package org.cloudfoundry.identity.uaa.api.common;
 
+import java.io.Closeable;
+
 import org.cloudfoundry.identity.uaa.api.client.UaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
 import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
 import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
 
@@ -25,7 +28,7 @@ import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
  * @author Josh Ghiloni
  *
  */
-public interface UaaConnection {
+public interface UaaConnection extends Closeable {
 	/**
 	 * @return an entry point for client APIs
 	 */
@@ -40,4 +43,19 @@ public interface UaaConnection {
 	 * @return an entry point for user APIs
 	 */
 	public UaaUserOperations userOperations();
+
+	/**
+	 * @return how often the OAuth token endpoint has been called so far for this connection's credentials, including by
+	 * other connections sharing the same token
+	 */
+	public UaaTokenStatistics getTokenStatistics();
+
+	/**
+	 * Release this connection. Connections to the same server with the same credentials are shared; once every holder
+	 * has closed it, its pooled HTTP connections are closed and its access token is no longer renewed in the
+	 * background. The connection and the operations obtained from it must not be used afterwards; once the pooled
+	 * connections are closed, requests made through those operations fail with an {@link IllegalStateException}.
+	 * Calling this more than once has no further effect.
+	 */
+	public void close();
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.api.client.AsyncUaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.client.impl.AsyncUaaClientOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.common.AsyncUaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
+import org.cloudfoundry.identity.uaa.api.group.AsyncUaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.impl.AsyncUaaGroupOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.user.AsyncUaaUserOperations;
+import org.cloudfoundry.identity.uaa.api.user.impl.AsyncUaaUserOperationsImpl;
+
+/**
+ * @see AsyncUaaConnection
+ */
+public class AsyncUaaConnectionImpl implements AsyncUaaConnection {
+	private static final Log log = LogFactory.getLog(AsyncUaaConnectionImpl.class);
+
+	private final UaaConnectionHelper helper;
+
+	private final AsyncUaaClientOperations clientOperations;
+
+	private final AsyncUaaGroupOperations groupOperations;
+
+	private final AsyncUaaUserOperations userOperations;
+
+	public AsyncUaaConnectionImpl(UaaConnectionHelper helper) {
+		this.helper = helper;
+		this.clientOperations = new AsyncUaaClientOperationsImpl(helper);
+		this.groupOperations = new AsyncUaaGroupOperationsImpl(helper);
+		this.userOperations = new AsyncUaaUserOperationsImpl(helper);
+	}
+
+	public AsyncUaaClientOperations clientOperations() {
+		return clientOperations;
+	}
+
+	public AsyncUaaGroupOperations groupOperations() {
+		return groupOperations;
+	}
+
+	public AsyncUaaUserOperations userOperations() {
+		return userOperations;
+	}
+
+	public UaaTokenStatistics getTokenStatistics() {
+		return helper.getTokenStatistics();
+	}
+
+	public void close() {
+		try {
+			helper.close();
+		}
+		catch (IOException e) {
+			log.warn("Failed to close the HTTP connection pool", e);
+		}
+	}
+}
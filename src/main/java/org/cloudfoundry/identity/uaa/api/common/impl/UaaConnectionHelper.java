@@ -15,77 +15,206 @@
  */
 package org.cloudfoundry.identity.uaa.api.common.impl;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.Continuation;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.SettableFuture;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
 import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.codehaus.jackson.JsonNode;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.ClientHttpRequestExecution;
-import org.springframework.http.client.ClientHttpRequestInterceptor;
-import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
-import org.springframework.security.oauth2.client.token.AccessTokenProvider;
-import org.springframework.security.oauth2.client.token.AccessTokenProviderChain;
-import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
-import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
-import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
-import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitAccessTokenProvider;
-import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitResourceDetails;
-import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordAccessTokenProvider;
-import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
-import org.springframework.security.oauth2.common.AuthenticationScheme;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriTemplate;
+import org.springframework.web.util.UriUtils;
 
 /**
  * A helper clas used by the various <code>*Operations</code> implementations to handle JSON HTTP communications with
  * the UAA server
  * 
  * @author Josh Ghiloni
- *
+ * 
  */
-public class UaaConnectionHelper {
-	private static final AccessTokenProviderChain CHAIN = new AccessTokenProviderChain(
-			Arrays.<AccessTokenProvider> asList(new ClientCredentialsAccessTokenProvider(),
-					new ImplicitAccessTokenProvider(), new ResourceOwnerPasswordAccessTokenProvider()));
+public class UaaConnectionHelper implements Closeable {
+	private static final Log log = LogFactory.getLog(UaaConnectionHelper.class);
+
+	private static final int MAX_USER_NAMES_PER_QUERY = 200;
+
+	/**
+	 * The error code UAA answers with when an update names a version that is no longer current
+	 */
+	private static final String OPTIMISTIC_LOCKING_FAILURE = "optimistic_locking_failure";
+
+	private static final ScheduledExecutorService RETRY_SCHEDULER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "uaa-conflict-retry");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static final AtomicInteger LOOKUP_THREADS = new AtomicInteger();
 
-	private OAuth2AccessToken token;
+	/**
+	 * Runs lookups that the default lookup pool has no room for on the calling thread. Unlike
+	 * {@link ThreadPoolExecutor.CallerRunsPolicy} this still runs them once the pool has been shut down, so that a
+	 * lookup forked after {@link #close()} fails instead of never completing
+	 */
+	private static final RejectedExecutionHandler RUN_ON_CALLER = new RejectedExecutionHandler() {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			r.run();
+		}
+	};
 
 	private URL url;
 
-	private UaaCredentials creds;
+	private UaaHttpTransport transport;
 
-	private static final Log log = LogFactory.getLog(UaaConnectionHelper.class);
+	private UaaTokenManager tokenManager;
+
+	private final UaaUserIdCache userIds;
+
+	private final UaaScimObjectCache scimObjects;
 
 	/**
-	 * Establish connectivity information for this session.
+	 * Used while the settings name no lookup executor. Its threads are only started when needed
+	 */
+	private final ThreadPoolExecutor defaultLookupExecutor;
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * Establish connectivity information for this session, using a transport with default settings.
 	 * 
 	 * @param url
 	 * @param creds
 	 * @see org.cloudfoundry.identity.uaa.api.UaaConnectionFactory#getConnection(URL, UaaCredentials)
 	 */
 	public UaaConnectionHelper(URL url, UaaCredentials creds) {
+		this(url, creds, new UaaHttpTransport(new UaaConnectionSettings()));
+	}
+
+	/**
+	 * Establish connectivity information for this session.
+	 * 
+	 * @param url
+	 * @param creds
+	 * @param transport the pooled transport shared by every call made through this helper
+	 * @see org.cloudfoundry.identity.uaa.api.UaaConnectionFactory#getConnection(URL, UaaCredentials,
+	 * UaaConnectionSettings)
+	 */
+	public UaaConnectionHelper(URL url, UaaCredentials creds, UaaHttpTransport transport) {
+		Assert.notNull(transport);
+
 		this.url = url;
-		this.creds = creds;
+		this.transport = transport;
+		this.tokenManager = UaaTokenCache.getSharedInstance().acquire(url, creds, transport.getSettings());
+
+		UaaConnectionSettings settings = transport.getSettings();
+		this.userIds = new UaaUserIdCache(settings.getUserIdCacheSize(), settings.getUserIdCacheTtl(),
+				settings.getUserIdNegativeCacheTtl());
+		this.scimObjects = new UaaScimObjectCache(settings.getScimObjectCacheSize());
+		this.defaultLookupExecutor = createLookupExecutor(settings);
+	}
+
+	/**
+	 * Every lookup is a request to the same server, so no more of them run at once than the connection pool allows per
+	 * route. Nothing is queued: a lookup that finds every thread busy runs on the calling thread, so lookups that fork
+	 * and join further lookups cannot starve each other. Idle threads exit after a minute
+	 */
+	private static ThreadPoolExecutor createLookupExecutor(UaaConnectionSettings settings) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(settings.getMaxConnectionsPerRoute(),
+				settings.getMaxConnectionsPerRoute(), 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "uaa-lookup-" + LOOKUP_THREADS.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, RUN_ON_CALLER);
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Release the shared access token, close the transport and stop the default lookup executor. Calling this more
+	 * than once has no further effect. Requests made afterwards, including through operation objects obtained earlier,
+	 * fail with an {@link IllegalStateException}.
+	 */
+	public void close() throws IOException {
+		if (closed.compareAndSet(false, true)) {
+			tokenManager.release();
+			transport.close();
+			defaultLookupExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if {@link #close()} has been called
+	 */
+	private void verifyOpen() {
+		Assert.state(!closed.get(), "Connection has been closed");
+	}
+
+	/**
+	 * @return how often the OAuth token endpoint has been called so far for this helper's credentials. The token is
+	 * shared with every other helper for the same server and credentials, so this counts their calls too
+	 */
+	public UaaTokenStatistics getTokenStatistics() {
+		return tokenManager.getStatistics();
 	}
 
 	/**
@@ -101,6 +230,50 @@ public class UaaConnectionHelper {
 		return exchange(HttpMethod.GET, null, uri, responseType, uriVariables);
 	}
 
+	/**
+	 * Do an HTTP GET for a page of SCIM results, reading the response as a stream. Each resource is handed to the
+	 * consumer as soon as it has been decoded, instead of the whole page being decoded into a collection first.
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param resourceType the type of resource on the page
+	 * @param consumer receives each resource, on the calling thread
+	 * @param uriVariables any uri variables
+	 * @return the paging information of the page. Its resources are null
+	 */
+	public <T> PagedResult<T> getResources(String uri, Class<T> resourceType, ResourceConsumer<? super T> consumer,
+			Object... uriVariables) {
+		Assert.notNull(consumer);
+		verifyOpen();
+
+		final HttpHeaders headers = new HttpHeaders();
+		OAuth2AccessToken token = getHeaders(headers);
+
+		RequestCallback callback = new RequestCallback() {
+			public void doWithRequest(ClientHttpRequest request) {
+				request.getHeaders().putAll(headers);
+			}
+		};
+
+		UaaResourceStreamReader<T> reader = new UaaResourceStreamReader<T>(transport.getObjectMapper(), resourceType,
+				consumer);
+		RestTemplate template = transport.getRestTemplate();
+
+		// error responses are raised before the body is read, so no resource has been consumed when retrying
+		try {
+			return template.execute("{base}" + uri, HttpMethod.GET, callback, reader, getUriVariables(uriVariables));
+		}
+		catch (HttpClientErrorException e) {
+			if (!isInvalidToken(e)) {
+				throw e;
+			}
+
+			log.debug("Access token rejected; renewing it and retrying GET " + uri);
+			setAuthorization(headers, tokenManager.replaceRejectedToken(token.getValue()));
+
+			return template.execute("{base}" + uri, HttpMethod.GET, callback, reader, getUriVariables(uriVariables));
+		}
+	}
+
 	/**
 	 * Do an HTTP DELETE
 	 * 
@@ -116,7 +289,7 @@ public class UaaConnectionHelper {
 
 	/**
 	 * Do an HTTP POST
-	 *
+	 * 
 	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
 	 * @param body the request body
 	 * @param responseType the object type to be returned
@@ -131,7 +304,7 @@ public class UaaConnectionHelper {
 
 	/**
 	 * Do an HTTP PUT
-	 *
+	 * 
 	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
 	 * @param body the request body
 	 * @param responseType the object type to be returned
@@ -147,7 +320,7 @@ public class UaaConnectionHelper {
 	/**
 	 * Do an HTTP PUT with SCIM features. SCIM requires PUT requests of a SCIM object have the version of the object set
 	 * as the <code>If-Match</code> request header.
-	 *
+	 * 
 	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
 	 * @param body the request body
 	 * @param responseType the object type to be returned
@@ -163,6 +336,40 @@ public class UaaConnectionHelper {
 		return exchange(HttpMethod.PUT, headers, body, uri, responseType, uriVariables);
 	}
 
+	/**
+	 * Do an HTTP GET of a single SCIM object. If a copy of the object is already held, its version is sent as the
+	 * <code>If-None-Match</code> request header, and if the server replies that the object has not changed since, the
+	 * copy is returned instead of being downloaded again. If the caller holds no copy but the connection remembers
+	 * one, the remembered copy is used the same way.
+	 * 
+	 * @param uri the URI of the object (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param current the copy of the object already held, or null if there is none
+	 * @param uriVariables any uri variables
+	 * @return the object, <code>current</code> if it has not changed, or null if it does not exist
+	 * @see UaaConnectionSettings#getScimObjectCacheSize()
+	 */
+	public <ResponseType extends ScimMetaObject> ResponseType getScimObject(String uri,
+			Class<ResponseType> responseType, ResponseType current, Object... uriVariables) {
+		String key = getScimObjectKey(uri, uriVariables);
+		UaaScimObjectCache.CachedObject cached = current == null && key != null ? scimObjects.get(key) : null;
+
+		try {
+			ResponseType object = exchange(HttpMethod.GET, getIfNoneMatchHeaders(current, cached), null, uri,
+					responseType, uriVariables);
+
+			return unlessNotModified(key, object, current, cached, responseType);
+		}
+		catch (HttpClientErrorException e) {
+			if (HttpStatus.NOT_FOUND.equals(e.getStatusCode())) {
+				forgetScimObject(key);
+				return null;
+			}
+
+			throw e;
+		}
+	}
+
 	/**
 	 * Convenience method to get a user ID for a given username. Equivalent to calling
 	 * 
@@ -177,32 +384,782 @@ public class UaaConnectionHelper {
 	 * return users.getResources().iterator().next().getId();
 	 * </pre>
 	 * 
+	 * except that recent results, including users that were not found, are remembered for a while. Errors other than
+	 * not found are thrown, and not remembered.
+	 * 
 	 * @param userName the userName
-	 * @return the user ID
+	 * @return the user ID, or null if there is no such user
+	 * @see UaaConnectionSettings#getUserIdCacheTtl()
 	 */
 	public String getUserIdByName(String userName) {
+		UaaUserIdCache.CachedId cached = userIds.get(userName);
+		if (cached != null) {
+			return cached.getId();
+		}
+
+		SearchResults retval = null;
+		try {
+			retval = exchange(HttpMethod.GET, null, getUserIdQuery(userName), SearchResults.class);
+		}
+		catch (HttpClientErrorException e) {
+			if (!HttpStatus.NOT_FOUND.equals(e.getStatusCode())) {
+				throw e;
+			}
+
+			log.debug("User " + userName + " not found", e);
+		}
+
+		String userId = retval == null ? null : getFirstId(retval);
+		userIds.put(userName, userId);
+		return userId;
+	}
+
+	/**
+	 * Do an asynchronous HTTP GET
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see #exchangeAsync(HttpMethod, HttpHeaders, Object, String, Class, Object...)
+	 */
+	public <ResponseType> ListenableFuture<ResponseType> getAsync(String uri, Class<ResponseType> responseType,
+			Object... uriVariables) {
+		return exchangeAsync(HttpMethod.GET, new HttpHeaders(), null, uri, responseType, uriVariables);
+	}
+
+	/**
+	 * Do an asynchronous HTTP DELETE
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see #exchangeAsync(HttpMethod, HttpHeaders, Object, String, Class, Object...)
+	 */
+	public <ResponseType> ListenableFuture<ResponseType> deleteAsync(String uri, Class<ResponseType> responseType,
+			Object... uriVariables) {
+		return exchangeAsync(HttpMethod.DELETE, new HttpHeaders(), null, uri, responseType, uriVariables);
+	}
+
+	/**
+	 * Do an asynchronous HTTP POST
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param body the request body
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see #exchangeAsync(HttpMethod, HttpHeaders, Object, String, Class, Object...)
+	 */
+	public <RequestType, ResponseType> ListenableFuture<ResponseType> postAsync(String uri, RequestType body,
+			Class<ResponseType> responseType, Object... uriVariables) {
+		return exchangeAsync(HttpMethod.POST, new HttpHeaders(), body, uri, responseType, uriVariables);
+	}
+
+	/**
+	 * Do an asynchronous HTTP PUT
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param body the request body
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see #exchangeAsync(HttpMethod, HttpHeaders, Object, String, Class, Object...)
+	 */
+	public <RequestType, ResponseType> ListenableFuture<ResponseType> putAsync(String uri, RequestType body,
+			Class<ResponseType> responseType, Object... uriVariables) {
+		return exchangeAsync(HttpMethod.PUT, new HttpHeaders(), body, uri, responseType, uriVariables);
+	}
+
+	/**
+	 * Do an asynchronous HTTP PUT with SCIM features
+	 * 
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param body the request body
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see #putScimObject(String, ScimMetaObject, Class, Object...)
+	 */
+	public <RequestType extends ScimMetaObject, ResponseType> ListenableFuture<ResponseType> putScimObjectAsync(
+			String uri, RequestType body, Class<ResponseType> responseType, Object... uriVariables) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("if-match", body.getMeta().get("version"));
+
+		return exchangeAsync(HttpMethod.PUT, headers, body, uri, responseType, uriVariables);
+	}
+
+	/**
+	 * Do an asynchronous HTTP GET of a single SCIM object
+	 * 
+	 * @param uri the URI of the object (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param current the copy of the object already held, or null if there is none
+	 * @param uriVariables any uri variables
+	 * @return the future object, <code>current</code> if it has not changed, or null if it does not exist
+	 * @see #getScimObject(String, Class, ScimMetaObject, Object...)
+	 */
+	public <ResponseType extends ScimMetaObject> ListenableFuture<ResponseType> getScimObjectAsync(String uri,
+			final Class<ResponseType> responseType, final ResponseType current, Object... uriVariables) {
+		final SettableFuture<ResponseType> result = new SettableFuture<ResponseType>();
+
+		final String key = getScimObjectKey(uri, uriVariables);
+		final UaaScimObjectCache.CachedObject cached = current == null && key != null ? scimObjects.get(key) : null;
+
+		exchangeAsync(HttpMethod.GET, getIfNoneMatchHeaders(current, cached), null, uri, responseType, uriVariables)
+				.addCallback(new ListenableFutureCallback<ResponseType>() {
+					public void onSuccess(ResponseType object) {
+						try {
+							result.set(unlessNotModified(key, object, current, cached, responseType));
+						}
+						catch (Throwable t) {
+							result.setException(t);
+						}
+					}
+
+					public void onFailure(Throwable t) {
+						if (t instanceof HttpClientErrorException
+								&& HttpStatus.NOT_FOUND.equals(((HttpClientErrorException) t).getStatusCode())) {
+							forgetScimObject(key);
+							result.set(null);
+						}
+						else {
+							result.setException(t);
+						}
+					}
+				});
+
+		return result;
+	}
+
+	/**
+	 * @param current the copy of a SCIM object held by the caller, or null
+	 * @param cached the copy remembered by the connection, or null
+	 * @return headers that ask the server to send the object only if its version differs from the copy's
+	 */
+	private static HttpHeaders getIfNoneMatchHeaders(ScimMetaObject current, UaaScimObjectCache.CachedObject cached) {
+		HttpHeaders headers = new HttpHeaders();
+
+		String version = null;
+		if (current != null) {
+			version = getVersion(current);
+		}
+		else if (cached != null) {
+			version = cached.getVersion();
+		}
+
+		if (version != null) {
+			headers.setIfNoneMatch("\"" + version + "\"");
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Work out the result of a conditional GET, remembering the object if it was sent
+	 * 
+	 * @param key the cache key of the object, or null if it is not to be cached
+	 * @param object the response body, which is null only if the server replied 304 Not Modified
+	 * @param current the copy held by the caller, or null
+	 * @param cached the copy remembered by the connection, or null
+	 * @param responseType the object type
+	 * @return the up to date object
+	 */
+	private <ResponseType extends ScimMetaObject> ResponseType unlessNotModified(String key, ResponseType object,
+			ResponseType current, UaaScimObjectCache.CachedObject cached, Class<ResponseType> responseType) {
+		if (object == null) {
+			if (current != null || cached == null) {
+				return current;
+			}
+
+			try {
+				return transport.getObjectMapper().readValue(cached.getBody(), responseType);
+			}
+			catch (IOException e) {
+				forgetScimObject(key);
+				throw new IllegalStateException("Could not decode cached " + key, e);
+			}
+		}
+
+		if (key != null) {
+			try {
+				scimObjects.put(key, getVersion(object), transport.getObjectMapper().writeValueAsBytes(object));
+			}
+			catch (IOException e) {
+				log.debug("Could not cache " + key, e);
+			}
+		}
+
+		return object;
+	}
+
+	/**
+	 * @param uri the URI of a SCIM object (relative to the base URL set in the constructor)
+	 * @param uriVariables any uri variables
+	 * @return the key the object is cached under, or null if objects are not cached
+	 */
+	private String getScimObjectKey(String uri, Object... uriVariables) {
+		if (!scimObjects.isEnabled()) {
+			return null;
+		}
+
+		return new UriTemplate(uri).expand(uriVariables).toString();
+	}
+
+	/**
+	 * @param key the cache key of the object, or null
+	 */
+	private void forgetScimObject(String key) {
+		if (key != null) {
+			scimObjects.remove(key);
+		}
+	}
+
+	/**
+	 * Forget the cached copy of an object that is about to be changed or deleted. Since cached objects are always
+	 * checked with the server before use this is not needed for correctness, but it keeps objects that are gone or
+	 * out of date from taking up room in the cache.
+	 * 
+	 * @param method the Http Method (GET, POST, etc)
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param uriVariables any uri variables
+	 */
+	private void forgetChangedScimObject(HttpMethod method, String uri, Object... uriVariables) {
+		if (!HttpMethod.GET.equals(method)) {
+			forgetScimObject(getScimObjectKey(uri, uriVariables));
+		}
+	}
+
+	/**
+	 * @param object a SCIM object
+	 * @return its version, or null if it has none
+	 */
+	private static String getVersion(ScimMetaObject object) {
+		return object.getMeta() == null ? null : object.getMeta().get("version");
+	}
+
+	/**
+	 * Count the results of a SCIM query without downloading them. Only a single result is asked for, with only its
+	 * identifying attribute, and even that is discarded as it is read.
+	 * 
+	 * @param baseUrl the URL of the SCIM endpoint, relative to the base URL of the UAA server
+	 * @param request the query. Its page, attributes and sort order are ignored
+	 * @param idAttribute the cheapest attribute to ask for
+	 * @return the total number of results
+	 */
+	public int count(String baseUrl, FilterRequest request, String idAttribute) {
+		FilterRequest countRequest = request.withAttributes(idAttribute).withPage(1, 1).withSort(null, null);
+		PagedResult<Object> result = getResources(buildScimFilterUrl(baseUrl, countRequest), Object.class,
+				new ResourceConsumer<Object>() {
+					public void accept(Object resource) {
+					}
+				});
+
+		return result.getTotalResults();
+	}
+
+	/**
+	 * Iterate over every result of a SCIM query, fetching a page at a time and reading ahead as configured. When all
+	 * the results are fetched into a consumer, they are decoded as each response is read.
+	 * 
+	 * @param baseUrl the URL of the SCIM endpoint, relative to the base URL of the UAA server
+	 * @param request the query
+	 * @param resultType the class of a page of results
+	 * @return the results
+	 * @see UaaConnectionSettings#getPageSize()
+	 * @see UaaConnectionSettings#getPagePrefetchDepth()
+	 */
+	public <T> UaaPagedIterable<T> iterate(final String baseUrl, FilterRequest request,
+			final Class<? extends PagedResult<T>> resultType) {
+		@SuppressWarnings("unchecked")
+		final Class<T> resourceType = (Class<T>) GenericTypeResolver.resolveTypeArgument(resultType, PagedResult.class);
+
+		UaaConnectionSettings settings = transport.getSettings();
+		return new UaaPagedIterable<T>(request, settings.getPageSize(), getLookupExecutor(),
+				settings.getPagePrefetchDepth()) {
+			@Override
+			protected PagedResult<T> fetch(FilterRequest page) {
+				return get(buildScimFilterUrl(baseUrl, page), resultType);
+			}
+
+			@Override
+			protected PagedResult<T> fetch(FilterRequest page, ResourceConsumer<? super T> consumer) {
+				return getResources(buildScimFilterUrl(baseUrl, page), resourceType, consumer);
+			}
+		};
+	}
+
+	/**
+	 * Iterate over every result of a SCIM query in order of ID, paging by the last ID seen rather than by start index
+	 * 
+	 * @param baseUrl the URL of the SCIM endpoint, relative to the base URL of the UAA server
+	 * @param request the query. Its start index and sort order are ignored
+	 * @param resultType the class of a page of results
+	 * @return the results
+	 * @see UaaKeysetIterable
+	 */
+	public <T extends ScimMetaObject> UaaPagedIterable<T> iterateById(final String baseUrl, FilterRequest request,
+			final Class<? extends PagedResult<T>> resultType) {
+		UaaConnectionSettings settings = transport.getSettings();
+		return new UaaKeysetIterable<T>(request, "id", settings.getPageSize(), getLookupExecutor(),
+				settings.getPagePrefetchDepth()) {
+			@Override
+			protected Object keyOf(T resource) {
+				return resource.getId();
+			}
+
+			@Override
+			protected PagedResult<T> fetch(FilterRequest page) {
+				return get(buildScimFilterUrl(baseUrl, page), resultType);
+			}
+		};
+	}
+
+	/**
+	 * Start a lookup on the configured lookup executor, so that the calling thread can do independent work in the
+	 * meantime
+	 * 
+	 * @param lookup the lookup
+	 * @return the pending result of the lookup
+	 * @see UaaConnectionSettings#getLookupExecutor()
+	 * @see #join(Future)
+	 */
+	public <T> Future<T> fork(Callable<T> lookup) {
+		FutureTask<T> task = new FutureTask<T>(lookup);
+		try {
+			getLookupExecutor().execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			task.run();
+		}
+
+		return task;
+	}
+
+	private Executor getLookupExecutor() {
+		Executor executor = transport.getSettings().getLookupExecutor();
+		return executor != null ? executor : defaultLookupExecutor;
+	}
+
+	/**
+	 * Wait for a lookup started with {@link #fork(Callable)}
+	 * 
+	 * @param lookup the pending lookup
+	 * @return the result of the lookup. If it failed, its exception is rethrown
+	 */
+	public static <T> T join(Future<T> lookup) {
+		try {
+			return lookup.get();
+		}
+		catch (InterruptedException e) {
+			lookup.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a lookup", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Apply a change to a SCIM object with optimistic concurrency. The modification request carries the version of the
+	 * object it was derived from; if another client changes the object first, the server rejects the request as a
+	 * version conflict, and the object is read again and the change re-applied to it. This is repeated up to
+	 * {@link UaaConnectionSettings#getMaxConflictRetries()} times, with a growing, randomized delay between attempts.
+	 * Other conflicts, such as a duplicate name, are not retried.
+	 * 
+	 * @param uri the URI of the object (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param current the object as already read from the server, or null if it does not exist
+	 * @param reread reads the object again after a conflict, returning null if it no longer exists
+	 * @param update the change to apply
+	 * @param uriVariables any uri variables
+	 * @return the updated object, or <code>current</code> if the change turned out to be unnecessary
+	 * @throws HttpClientErrorException with status 404 if the object does not exist, or has been deleted since
+	 * @see #putScimObject(String, ScimMetaObject, Class, Object...)
+	 */
+	public <ResponseType, RequestType extends ScimMetaObject> ResponseType updateScimObject(String uri,
+			Class<ResponseType> responseType, ResponseType current, Callable<ResponseType> reread,
+			UaaScimUpdate<ResponseType, RequestType> update, Object... uriVariables) {
+		Assert.notNull(reread);
+		Assert.notNull(update);
+
+		for (int attempt = 1;; attempt++) {
+			if (current == null) {
+				throw notFound(uri, uriVariables);
+			}
+
+			RequestType request = update.apply(current);
+			if (request == null) {
+				return current;
+			}
+
+			try {
+				return putScimObject(uri, request, responseType, uriVariables);
+			}
+			catch (HttpClientErrorException e) {
+				if (!isVersionConflict(e) || attempt > transport.getSettings().getMaxConflictRetries()) {
+					throw e;
+				}
+
+				log.debug("Version conflict updating " + uri + "; re-reading and retrying");
+
+				try {
+					Thread.sleep(getConflictRetryDelay(attempt));
+					current = reread.call();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				catch (RuntimeException re) {
+					throw re;
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #updateScimObject(String, Class, Object, Callable, UaaScimUpdate, Object...)}. No
+	 * thread waits between attempts.
+	 * 
+	 * @param uri the URI of the object (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param current the object as read from the server
+	 * @param reread reads the object again after a conflict
+	 * @param update the change to apply
+	 * @param uriVariables any uri variables
+	 * @return the future updated object
+	 */
+	public <ResponseType, RequestType extends ScimMetaObject> ListenableFuture<ResponseType> updateScimObjectAsync(
+			String uri, Class<ResponseType> responseType, ListenableFuture<ResponseType> current,
+			Callable<ListenableFuture<ResponseType>> reread, UaaScimUpdate<ResponseType, RequestType> update,
+			Object... uriVariables) {
+		Assert.notNull(reread);
+		Assert.notNull(update);
+
+		SettableFuture<ResponseType> result = new SettableFuture<ResponseType>();
+		updateScimObjectAsync(1, uri, responseType, current, reread, update, result, uriVariables);
+
+		return result;
+	}
+
+	private <ResponseType, RequestType extends ScimMetaObject> void updateScimObjectAsync(final int attempt,
+			final String uri, final Class<ResponseType> responseType, ListenableFuture<ResponseType> current,
+			final Callable<ListenableFuture<ResponseType>> reread,
+			final UaaScimUpdate<ResponseType, RequestType> update, final SettableFuture<ResponseType> result,
+			final Object... uriVariables) {
+		ListenableFuture<ResponseType> written = UaaFutures.then(current,
+				new Continuation<ResponseType, ResponseType>() {
+					public ListenableFuture<ResponseType> apply(ResponseType value) {
+						if (value == null) {
+							throw notFound(uri, uriVariables);
+						}
+
+						RequestType request = update.apply(value);
+						if (request == null) {
+							return UaaFutures.immediate(value);
+						}
+
+						return putScimObjectAsync(uri, request, responseType, uriVariables);
+					}
+				});
+
+		written.addCallback(new ListenableFutureCallback<ResponseType>() {
+			public void onSuccess(ResponseType value) {
+				result.set(value);
+			}
+
+			public void onFailure(Throwable t) {
+				if (!(t instanceof HttpClientErrorException) || !isVersionConflict((HttpClientErrorException) t)
+						|| attempt > transport.getSettings().getMaxConflictRetries()) {
+					result.setException(t);
+					return;
+				}
+
+				log.debug("Version conflict updating " + uri + "; re-reading and retrying");
+
+				RETRY_SCHEDULER.schedule(new Runnable() {
+					public void run() {
+						try {
+							updateScimObjectAsync(attempt + 1, uri, responseType, reread.call(), reread, update,
+									result, uriVariables);
+						}
+						catch (Throwable t) {
+							result.setException(t);
+						}
+					}
+				}, getConflictRetryDelay(attempt), TimeUnit.MILLISECONDS);
+			}
+		});
+	}
+
+	/**
+	 * @param attempt the number of the attempt that failed, starting with 1
+	 * @return the exponentially growing, randomly shortened delay before the next attempt
+	 */
+	private long getConflictRetryDelay(int attempt) {
+		long delay = transport.getSettings().getConflictRetryBackoff() << Math.min(attempt - 1, 16);
+		return (long) (delay * (1 - Math.random() / 2));
+	}
+
+	/**
+	 * Asynchronous version of {@link #getUserIdByName(String)}
+	 * 
+	 * @param userName the userName
+	 * @return the future user ID, which will be null if the user does not exist
+	 */
+	public ListenableFuture<String> getUserIdByNameAsync(final String userName) {
+		UaaUserIdCache.CachedId cached = userIds.get(userName);
+		if (cached != null) {
+			return UaaFutures.immediate(cached.getId());
+		}
+
+		ListenableFuture<SearchResults> response = exchangeAsync(HttpMethod.GET, new HttpHeaders(), null,
+				getUserIdQuery(userName), SearchResults.class);
+
+		return new ListenableFutureAdapter<String, SearchResults>(response) {
+			@Override
+			protected String adapt(SearchResults retval) {
+				String userId = getFirstId(retval);
+				userIds.put(userName, userId);
+				return userId;
+			}
+		};
+	}
+
+	/**
+	 * Get the IDs of many users at once. Names that are not cached are looked up with as few queries as possible: each
+	 * query asks for a batch of names joined with <code>or</code>, and only for their <code>id</code> and
+	 * <code>userName</code>, with batches sized to keep every URL within
+	 * {@link UaaConnectionSettings#getMaxFilterUrlLength()}.
+	 * 
+	 * @param userNames the user names
+	 * @return the ID of each user that exists, keyed by user name in the order given. Users that do not exist are
+	 * absent from the map
+	 */
+	public Map<String, String> resolveUserIds(Collection<String> userNames) {
+		Assert.notNull(userNames);
+
+		Map<String, String> ids = new LinkedHashMap<String, String>();
+		for (List<String> batch : batchUncachedUserNames(userNames, ids)) {
+			SearchResults retval = exchange(HttpMethod.GET, null, getUserIdsQuery(batch), SearchResults.class);
+
+			addUserIds(batch, retval, ids);
+		}
+
+		return withoutMissingUsers(ids);
+	}
+
+	/**
+	 * Asynchronous version of {@link #resolveUserIds(Collection)}. The batches are requested concurrently.
+	 * 
+	 * @param userNames the user names
+	 * @return the future IDs of the users that exist, keyed by user name
+	 */
+	public ListenableFuture<Map<String, String>> resolveUserIdsAsync(Collection<String> userNames) {
+		Assert.notNull(userNames);
+
+		final Map<String, String> ids = new LinkedHashMap<String, String>();
+		final List<List<String>> batches = batchUncachedUserNames(userNames, ids);
+
+		ListenableFuture<?>[] responses = new ListenableFuture<?>[batches.size()];
+		for (int i = 0; i < responses.length; i++) {
+			responses[i] = exchangeAsync(HttpMethod.GET, new HttpHeaders(), null, getUserIdsQuery(batches.get(i)),
+					SearchResults.class);
+		}
+
+		return new ListenableFutureAdapter<Map<String, String>, List<Object>>(UaaFutures.all(responses)) {
+			@Override
+			protected Map<String, String> adapt(List<Object> retvals) {
+				for (int i = 0; i < retvals.size(); i++) {
+					addUserIds(batches.get(i), (SearchResults) retvals.get(i), ids);
+				}
+
+				return withoutMissingUsers(ids);
+			}
+		};
+	}
+
+	/**
+	 * Fill in the IDs of cached users, and split the rest into batches small enough to look up with one query each
+	 * 
+	 * @param userNames the user names to look up
+	 * @param ids receives an entry for every user name, in order. Cached ones have their ID (or null if the user is
+	 * known not to exist); the rest are filled in later
+	 * @return the batches of user names to look up
+	 */
+	private List<List<String>> batchUncachedUserNames(Collection<String> userNames, Map<String, String> ids) {
+		int overhead = url.toExternalForm().length() + getUserIdsQuery(Collections.<String> emptyList()).length()
+				+ "&filter=&count=".length() + String.valueOf(MAX_USER_NAMES_PER_QUERY).length();
+		int maxLength = transport.getSettings().getMaxFilterUrlLength();
+
+		List<List<String>> batches = new ArrayList<List<String>>();
+		List<String> batch = new ArrayList<String>();
+		int length = overhead;
+
+		for (String userName : userNames) {
+			if (!StringUtils.hasText(userName) || ids.containsKey(userName)) {
+				continue;
+			}
+
+			UaaUserIdCache.CachedId cached = userIds.get(userName);
+			ids.put(userName, cached == null ? null : cached.getId());
+			if (cached != null) {
+				continue;
+			}
+
+			int clauseLength = getEncodedLength(new FilterRequestBuilder().equals("username", userName).build()
+					.getFilter());
+			if (!batch.isEmpty()) {
+				clauseLength += getEncodedLength(" or ");
+			}
+
+			if (!batch.isEmpty() && (length + clauseLength > maxLength || batch.size() == MAX_USER_NAMES_PER_QUERY)) {
+				batches.add(batch);
+				batch = new ArrayList<String>();
+				length = overhead;
+				clauseLength -= getEncodedLength(" or ");
+			}
+
+			batch.add(userName);
+			length += clauseLength;
+		}
+
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+
+		return batches;
+	}
+
+	private String getUserIdsQuery(List<String> userNames) {
+		FilterRequestBuilder builder = new FilterRequestBuilder(false);
+		for (String userName : userNames) {
+			builder.equals("username", userName);
+		}
+
+		builder.attributes("id", "userName").count(userNames.size());
+
+		return buildScimFilterUrl("/Users", builder.build());
+	}
+
+	/**
+	 * Record the IDs found by a batch query, matching user names without regard to case as the server does
+	 * 
+	 * @param batch the user names that were queried
+	 * @param retval the response
+	 * @param ids receives the ID of each user in the batch, or null if it does not exist
+	 */
+	private void addUserIds(List<String> batch, SearchResults retval, Map<String, String> ids) {
+		Map<String, String> found = new HashMap<String, String>();
+
+		Collection<Map<String, Object>> resources = retval.getResources();
+		if (resources != null) {
+			for (Map<String, Object> resource : resources) {
+				String userName = (String) resource.get("userName");
+				if (userName != null) {
+					found.put(userName.toLowerCase(Locale.ROOT), (String) resource.get("id"));
+				}
+			}
+		}
+
+		for (String userName : batch) {
+			String userId = found.get(userName.toLowerCase(Locale.ROOT));
+			userIds.put(userName, userId);
+			ids.put(userName, userId);
+		}
+	}
+
+	private static Map<String, String> withoutMissingUsers(Map<String, String> ids) {
+		for (Iterator<String> i = ids.values().iterator(); i.hasNext();) {
+			if (i.next() == null) {
+				i.remove();
+			}
+		}
+
+		return ids;
+	}
+
+	private static int getEncodedLength(String queryParam) {
+		try {
+			return UriUtils.encodeQueryParam(queryParam, "UTF-8").length();
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Record the ID of a user created or renamed through this connection, so that it can be looked up by name
+	 * straight away
+	 * 
+	 * @param userName the user name
+	 * @param userId the user ID
+	 */
+	public void rememberUserId(String userName, String userId) {
+		Assert.hasText(userId);
+
+		userIds.removeId(userId);
+		userIds.put(userName, userId);
+	}
+
+	/**
+	 * Forget any cached name of a user that has been deleted or renamed through this connection
+	 * 
+	 * @param userId the user ID
+	 */
+	public void forgetUserId(String userId) {
+		Assert.hasText(userId);
+
+		userIds.removeId(userId);
+	}
+
+	private String getUserIdQuery(String userName) {
 		FilterRequestBuilder builder = new FilterRequestBuilder();
 		builder.equals("username", userName).attributes("id");
 
 		FilterRequest request = builder.build();
 
-		String uri = buildScimFilterUrl("/Users", request);
+		return buildScimFilterUrl("/Users", request);
+	}
 
-		try {
+	/**
+	 * A page of SCIM search results read as plain maps, for lookups that only ask for a few attributes
+	 */
+	static class SearchResults extends LinkedHashMap<String, Object> {
+		private static final long serialVersionUID = 1L;
 
-			@SuppressWarnings({ "rawtypes" })
-			Map retval = exchange(HttpMethod.GET, null, uri, Map.class);
+		/**
+		 * @return the matching resources, or null if the response has none
+		 */
+		@SuppressWarnings("unchecked")
+		Collection<Map<String, Object>> getResources() {
+			return (Collection<Map<String, Object>>) get("resources");
+		}
+	}
 
-			@SuppressWarnings("unchecked")
-			Collection<Map<String, Object>> resources = (Collection<Map<String, Object>>) retval.get("resources");
+	private static String getFirstId(SearchResults retval) {
+		Collection<Map<String, Object>> resources = retval.getResources();
 
-			Map<String, Object> first = resources.iterator().next();
-			return (String) first.get("id");
-		}
-		catch (Throwable t) {
-			t.printStackTrace();
+		if (resources == null || resources.isEmpty()) {
 			return null;
 		}
+
+		Map<String, Object> first = resources.iterator().next();
+		return (String) first.get("id");
 	}
 
 	/**
@@ -222,7 +1179,9 @@ public class UaaConnectionHelper {
 	}
 
 	/**
-	 * Make a REST call with custom headers
+	 * Make a REST call with custom headers. If the server rejects the access token as invalid or expired (which can
+	 * happen before the token's own expiry time because of clock skew or key rotation), the token is renewed and the
+	 * request is sent once more.
 	 * 
 	 * @param method the Http Method (GET, POST, etc)
 	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
@@ -234,19 +1193,176 @@ public class UaaConnectionHelper {
 	 */
 	private <RequestType, ResponseType> ResponseType exchange(HttpMethod method, HttpHeaders headers, RequestType body,
 			String uri, Class<ResponseType> responseType, Object... uriVariables) {
-		getHeaders(headers);
+		verifyOpen();
+		forgetChangedScimObject(method, uri, uriVariables);
+		OAuth2AccessToken token = getHeaders(headers);
+
+		RestTemplate template = transport.getRestTemplate();
+
+		ResponseEntity<ResponseType> responseEntity = null;
+		try {
+			responseEntity = template.exchange("{base}" + uri, method, getRequestEntity(headers, body), responseType,
+					getUriVariables(uriVariables));
+		}
+		catch (HttpClientErrorException e) {
+			if (!isInvalidToken(e)) {
+				throw e;
+			}
+
+			log.debug("Access token rejected; renewing it and retrying " + method + " " + uri);
+			setAuthorization(headers, tokenManager.replaceRejectedToken(token.getValue()));
+
+			responseEntity = template.exchange("{base}" + uri, method, getRequestEntity(headers, body), responseType,
+					getUriVariables(uriVariables));
+		}
+
+		return getBody(responseEntity);
+	}
+
+	/**
+	 * Make a non-blocking REST call with custom headers. The request is sent once the number of asynchronous requests
+	 * in flight on this connection falls below the configured limit; the calling thread never waits for it. Rejected
+	 * access tokens are handled as in {@link #exchange(HttpMethod, HttpHeaders, Object, String, Class, Object...)}.
+	 * Obtaining or renewing the token is done on the lookup executor, and only on the calling thread or an I/O thread
+	 * if that executor is saturated.
+	 * 
+	 * @param method the Http Method (GET, POST, etc)
+	 * @param headers the request headers
+	 * @param body the request body
+	 * @param uri the URI of the endpoint (relative to the base URL set in the constructor)
+	 * @param responseType the object type to be returned
+	 * @param uriVariables any uri variables
+	 * @return the future response body
+	 * @see org.springframework.web.client.AsyncRestTemplate#exchange(String, HttpMethod, HttpEntity, Class, Object...)
+	 * @see org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings#getMaxRequestsInFlight()
+	 */
+	private <RequestType, ResponseType> ListenableFuture<ResponseType> exchangeAsync(final HttpMethod method,
+			final HttpHeaders headers, final RequestType body, final String uri,
+			final Class<ResponseType> responseType, final Object... uriVariables) {
+		final SettableFuture<ResponseType> result = new SettableFuture<ResponseType>();
+		final Continuation<OAuth2AccessToken, ResponseType> send = new Continuation<OAuth2AccessToken, ResponseType>() {
+			public ListenableFuture<ResponseType> apply(OAuth2AccessToken token) {
+				setAuthorization(headers, token);
+				return sendAsync(method, headers, body, uri, responseType, uriVariables);
+			}
+		};
+
+		verifyOpen();
+		forgetChangedScimObject(method, uri, uriVariables);
+		setContentHeaders(headers);
+
+		ListenableFuture<OAuth2AccessToken> token = tokenManager.getAccessTokenAsync(getLookupExecutor());
+		UaaFutures.then(token, send).addCallback(new ListenableFutureCallback<ResponseType>() {
+			public void onSuccess(ResponseType value) {
+				result.set(value);
+			}
+
+			public void onFailure(Throwable t) {
+				if (!(t instanceof HttpClientErrorException) || !isInvalidToken((HttpClientErrorException) t)) {
+					result.setException(t);
+					return;
+				}
+
+				log.debug("Access token rejected; renewing it and retrying " + method + " " + uri);
+				String rejected = headers.getFirst("Authorization");
+				String rejectedToken = rejected.substring(rejected.indexOf(' ') + 1);
+
+				ListenableFuture<OAuth2AccessToken> renewed = tokenManager.replaceRejectedTokenAsync(rejectedToken,
+						getLookupExecutor());
+				UaaFutures.forward(UaaFutures.then(renewed, send), result);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Queue one asynchronous request with the limiter. The request may be started from an I/O thread when an earlier
+	 * one completes, so the headers, access token included, must already be set.
+	 * 
+	 * @see #exchangeAsync(HttpMethod, HttpHeaders, Object, String, Class, Object...)
+	 */
+	private <RequestType, ResponseType> ListenableFuture<ResponseType> sendAsync(final HttpMethod method,
+			final HttpHeaders headers, final RequestType body, final String uri,
+			final Class<ResponseType> responseType, final Object... uriVariables) {
+		return transport.getRequestLimiter().submit(new Callable<ListenableFuture<ResponseType>>() {
+			public ListenableFuture<ResponseType> call() {
+				// the connection may have been closed while the request was queued
+				verifyOpen();
+				AsyncRestTemplate template = transport.getAsyncRestTemplate();
+
+				ListenableFuture<ResponseEntity<ResponseType>> response = template.exchange("{base}" + uri, method,
+						getRequestEntity(headers, body), responseType, getUriVariables(uriVariables));
+
+				return new ListenableFutureAdapter<ResponseType, ResponseEntity<ResponseType>>(response) {
+					@Override
+					protected ResponseType adapt(ResponseEntity<ResponseType> responseEntity) {
+						return getBody(responseEntity);
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * @param e an error response
+	 * @return true if the server rejected an update because the object had changed since it was read. UAA also
+	 * answers 409 for other conflicts, such as a duplicate name, so a 409 only counts if its error code says so
+	 */
+	private boolean isVersionConflict(HttpClientErrorException e) {
+		if (HttpStatus.PRECONDITION_FAILED.equals(e.getStatusCode())) {
+			return true;
+		}
+
+		if (!HttpStatus.CONFLICT.equals(e.getStatusCode())) {
+			return false;
+		}
+
+		try {
+			JsonNode error = transport.getObjectMapper().readTree(e.getResponseBodyAsString()).get("error");
+			return error != null && OPTIMISTIC_LOCKING_FAILURE.equals(error.getTextValue());
+		}
+		catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param uri the URI of the object
+	 * @param uriVariables any uri variables
+	 * @return the error for an update of an object that does not exist
+	 */
+	private static HttpClientErrorException notFound(String uri, Object... uriVariables) {
+		return new HttpClientErrorException(HttpStatus.NOT_FOUND, "No object to update at "
+				+ new UriTemplate(uri).expand(uriVariables));
+	}
+
+	/**
+	 * @param e an error response
+	 * @return true if the server rejected the request because the access token was invalid or expired
+	 */
+	private static boolean isInvalidToken(HttpClientErrorException e) {
+		if (!HttpStatus.UNAUTHORIZED.equals(e.getStatusCode())) {
+			return false;
+		}
+
+		String challenge = e.getResponseHeaders() == null ? null : e.getResponseHeaders().getFirst(
+				"WWW-Authenticate");
 
-		RestTemplate template = new RestTemplate();
-		template.setInterceptors(LoggerInterceptor.INTERCEPTOR);
+		return (challenge != null && challenge.contains("invalid_token"))
+				|| e.getResponseBodyAsString().contains("invalid_token");
+	}
 
-		HttpEntity<RequestType> requestEntity = null;
+	private <RequestType> HttpEntity<RequestType> getRequestEntity(HttpHeaders headers, RequestType body) {
 		if (body == null) {
-			requestEntity = new HttpEntity<RequestType>(headers);
+			return new HttpEntity<RequestType>(headers);
 		}
 		else {
-			requestEntity = new HttpEntity<RequestType>(body, headers);
+			return new HttpEntity<RequestType>(body, headers);
 		}
+	}
 
+	private Object[] getUriVariables(Object... uriVariables) {
 		// combine url into the varargs
 		List<Object> varList = new ArrayList<Object>();
 		varList.add(url);
@@ -254,9 +1370,10 @@ public class UaaConnectionHelper {
 			varList.addAll(Arrays.asList(uriVariables));
 		}
 
-		ResponseEntity<ResponseType> responseEntity = template.exchange("{base}" + uri, method, requestEntity,
-				responseType, varList.toArray());
+		return varList.toArray();
+	}
 
+	private <ResponseType> ResponseType getBody(ResponseEntity<ResponseType> responseEntity) {
 		if (HttpStatus.Series.SUCCESSFUL.equals(responseEntity.getStatusCode().series())) {
 			return responseEntity.getBody();
 		}
@@ -321,117 +1438,50 @@ public class UaaConnectionHelper {
 			hasParams = true;
 		}
 
-		return uriBuilder.toString();
-	}
+		if (StringUtils.hasText(request.getSortBy())) {
+			if (hasParams) {
+				uriBuilder.append("&");
+			}
+			else {
+				uriBuilder.append("?");
+			}
 
-	/**
-	 * Add the Authorization, Content-Type, and Accept headers to the request
-	 * 
-	 * @param headers
-	 */
-	private void getHeaders(HttpHeaders headers) {
-		OAuth2AccessToken token = getAccessToken();
-		headers.add("Authorization", token.getTokenType() + " " + token.getValue());
+			uriBuilder.append("sortBy=").append(request.getSortBy());
+			hasParams = true;
 
-		if (headers.getContentType() == null) {
-			headers.setContentType(MediaType.APPLICATION_JSON);
+			if (request.getSortOrder() != null) {
+				uriBuilder.append("&sortOrder=").append(request.getSortOrder());
+			}
 		}
 
-		if (headers.getAccept() == null || headers.getAccept().size() == 0) {
-			headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-		}
+		return uriBuilder.toString();
 	}
 
 	/**
-	 * Get the OAuth access token (and refresh it if necessary)
+	 * Add the Authorization, Content-Type, and Accept headers to the request
 	 * 
-	 * @return
+	 * @param headers
+	 * @return the access token used for the Authorization header
 	 */
-	private OAuth2AccessToken getAccessToken() {
-		if (token == null) {
-			OAuth2ProtectedResourceDetails details = getResourceDetails(url, creds);
-			token = CHAIN.obtainAccessToken(details, new DefaultAccessTokenRequest());
-		}
-		else if (token.isExpired()) {
-			refreshAccessToken();
-		}
+	private OAuth2AccessToken getHeaders(HttpHeaders headers) {
+		OAuth2AccessToken token = tokenManager.getAccessToken();
+		setAuthorization(headers, token);
+		setContentHeaders(headers);
 
 		return token;
 	}
 
-	/**
-	 * refresh the access token
-	 */
-	private void refreshAccessToken() {
-		Assert.notNull(token);
-
-		OAuth2ProtectedResourceDetails details = getResourceDetails(url, creds);
-		token = CHAIN.refreshAccessToken(details, token.getRefreshToken(), new DefaultAccessTokenRequest());
-	}
-
-	/**
-	 * Build the necessary details to get an access token for the correct token type (resource owner, client
-	 * credentials, or implicit, depending on how much information was provided)
-	 * 
-	 * @param url
-	 * @param creds
-	 * @return
-	 */
-	private OAuth2ProtectedResourceDetails getResourceDetails(URL url, UaaCredentials creds) {
-		Assert.notNull(url);
-		Assert.notNull(creds);
-		Assert.notNull(creds.getClientId());
-
-		OAuth2ProtectedResourceDetails details = null;
-		if (StringUtils.hasText(creds.getUserId()) && StringUtils.hasText(creds.getPassword())) {
-			ResourceOwnerPasswordResourceDetails tokenDetails = new ResourceOwnerPasswordResourceDetails();
-			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
-			tokenDetails.setUsername(creds.getUserId());
-			tokenDetails.setPassword(creds.getPassword());
-			tokenDetails.setClientId(creds.getClientId());
-			tokenDetails.setClientSecret(creds.getClientSecret());
-			tokenDetails.setAccessTokenUri(url + "/oauth/token");
-
-			details = tokenDetails;
-		}
-		else if (StringUtils.hasText(creds.getClientSecret())) {
-			ClientCredentialsResourceDetails tokenDetails = new ClientCredentialsResourceDetails();
-			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
-			tokenDetails.setClientId(creds.getClientId());
-			tokenDetails.setClientSecret(creds.getClientSecret());
-			tokenDetails.setAccessTokenUri(url + "/oauth/token");
-
-			details = tokenDetails;
+	private static void setContentHeaders(HttpHeaders headers) {
+		if (headers.getContentType() == null) {
+			headers.setContentType(MediaType.APPLICATION_JSON);
 		}
-		else {
-			ImplicitResourceDetails tokenDetails = new ImplicitResourceDetails();
-			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
-			tokenDetails.setClientId(creds.getClientId());
-			tokenDetails.setAccessTokenUri(url + "/oauth/token");
 
-			details = tokenDetails;
+		if (headers.getAccept() == null || headers.getAccept().size() == 0) {
+			headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
 		}
-
-		return details;
 	}
 
-	/**
-	 * An interceptor used to log information about HTTP calls
-	 * 
-	 * @author Josh Ghiloni
-	 *
-	 */
-	private static class LoggerInterceptor implements ClientHttpRequestInterceptor {
-		public static final List<ClientHttpRequestInterceptor> INTERCEPTOR = Arrays
-				.<ClientHttpRequestInterceptor> asList(new LoggerInterceptor());
-
-		public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
-				throws IOException {
-			if (log.isDebugEnabled()) {
-				log.debug(new String(body, "UTF-8"));
-			}
-
-			return execution.execute(request, body);
-		}
+	private static void setAuthorization(HttpHeaders headers, OAuth2AccessToken token) {
+		headers.set("Authorization", token.getTokenType() + " " + token.getValue());
 	}
 }
@@ -15,9 +15,14 @@
  */
 package org.cloudfoundry.identity.uaa.api.common.impl;
 
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.api.client.UaaClientOperations;
 import org.cloudfoundry.identity.uaa.api.client.impl.UaaClientOperationsImpl;
 import org.cloudfoundry.identity.uaa.api.common.UaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
 import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
 import org.cloudfoundry.identity.uaa.api.group.impl.UaaGroupOperationsImpl;
 import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
@@ -28,22 +33,45 @@ import org.cloudfoundry.identity.uaa.api.user.impl.UaaUserOperationsImpl;
  * @author Josh Ghiloni
  */
 public class UaaConnectionImpl implements UaaConnection {
+	private static final Log log = LogFactory.getLog(UaaConnectionImpl.class);
+
+	private final UaaConnectionHelper helper;
+
+	private final UaaClientOperations clientOperations;
+
+	private final UaaGroupOperations groupOperations;
 
-	private UaaConnectionHelper helper;
+	private final UaaUserOperations userOperations;
 
 	public UaaConnectionImpl(UaaConnectionHelper helper) {
 		this.helper = helper;
+		this.clientOperations = new UaaClientOperationsImpl(helper);
+		this.groupOperations = new UaaGroupOperationsImpl(helper);
+		this.userOperations = new UaaUserOperationsImpl(helper);
 	}
 
 	public UaaClientOperations clientOperations() {
-		return new UaaClientOperationsImpl(helper);
+		return clientOperations;
 	}
 
 	public UaaGroupOperations groupOperations() {
-		return new UaaGroupOperationsImpl(helper);
+		return groupOperations;
 	}
 
 	public UaaUserOperations userOperations() {
-		return new UaaUserOperationsImpl(helper);
+		return userOperations;
+	}
+
+	public UaaTokenStatistics getTokenStatistics() {
+		return helper.getTokenStatistics();
+	}
+
+	public void close() {
+		try {
+			helper.close();
+		}
+		catch (IOException e) {
+			log.warn("Failed to close the HTTP connection pool", e);
+		}
 	}
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.api.client.AsyncUaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.client.UaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.common.AsyncUaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.UaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
+import org.cloudfoundry.identity.uaa.api.group.AsyncUaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.user.AsyncUaaUserOperations;
+import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
+import org.springframework.util.Assert;
+
+/**
+ * Hands out one shared, warm connection per server and set of credentials. Every caller gets its own handle, which it
+ * must close when it is done; the underlying connection, with its HTTP connection pool and operation objects, is
+ * created by the first caller and closed when the last handle is. Blocking and asynchronous handles for the same server
+ * and credentials share the same connection pool.
+ * 
+ * Every caller sharing a connection must ask for it with equal {@link UaaConnectionSettings}, since a connection can
+ * only have one set. Asking for an open connection with different settings fails rather than quietly handing out a
+ * connection that does not behave as asked.
+ */
+public class UaaConnectionRegistry {
+	private static final Log log = LogFactory.getLog(UaaConnectionRegistry.class);
+
+	private final Map<UaaServerCredentials, Entry> entries = new HashMap<UaaServerCredentials, Entry>();
+
+	/**
+	 * Get a handle to the shared blocking connection for the given server and credentials, creating it if necessary
+	 * 
+	 * @param url the base URL of the UAA server
+	 * @param creds the credentials to connect with
+	 * @param settings the settings of the connection
+	 * @return a new handle, which the caller must close
+	 * @throws IllegalStateException if the connection is already open with different settings
+	 */
+	public UaaConnection getConnection(URL url, UaaCredentials creds, UaaConnectionSettings settings) {
+		Entry entry = acquire(url, creds, settings);
+		return new SharedConnection(entry);
+	}
+
+	/**
+	 * Get a handle to the shared asynchronous connection for the given server and credentials, creating it if
+	 * necessary
+	 * 
+	 * @param url the base URL of the UAA server
+	 * @param creds the credentials to connect with
+	 * @param settings the settings of the connection
+	 * @return a new handle, which the caller must close
+	 * @throws IllegalStateException if the connection is already open with different settings
+	 */
+	public AsyncUaaConnection getAsyncConnection(URL url, UaaCredentials creds, UaaConnectionSettings settings) {
+		Entry entry = acquire(url, creds, settings);
+		return new SharedAsyncConnection(entry);
+	}
+
+	/**
+	 * @return the number of shared connections currently open
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private synchronized Entry acquire(URL url, UaaCredentials creds, UaaConnectionSettings settings) {
+		Assert.notNull(settings);
+
+		UaaServerCredentials key = new UaaServerCredentials(url, creds);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key, settings, new UaaConnectionHelper(url, creds, new UaaHttpTransport(settings)));
+			entries.put(key, entry);
+		}
+		else {
+			Assert.state(entry.settings.equals(settings), "A connection to " + url
+					+ " with these credentials is already open with different settings");
+		}
+
+		entry.handles++;
+		return entry;
+	}
+
+	private void release(Entry entry) {
+		synchronized (this) {
+			entry.handles--;
+			if (entry.handles > 0) {
+				return;
+			}
+
+			entries.remove(entry.key);
+		}
+
+		try {
+			entry.helper.close();
+		}
+		catch (IOException e) {
+			log.warn("Failed to close the HTTP connection pool", e);
+		}
+	}
+
+	/**
+	 * A shared connection and the number of open handles to it
+	 */
+	private static class Entry {
+		private final UaaServerCredentials key;
+
+		private final UaaConnectionSettings settings;
+
+		private final UaaConnectionHelper helper;
+
+		private UaaConnectionImpl connection;
+
+		private AsyncUaaConnectionImpl asyncConnection;
+
+		private int handles;
+
+		Entry(UaaServerCredentials key, UaaConnectionSettings settings, UaaConnectionHelper helper) {
+			this.key = key;
+			this.settings = settings;
+			this.helper = helper;
+		}
+
+		synchronized UaaConnectionImpl getConnection() {
+			if (connection == null) {
+				connection = new UaaConnectionImpl(helper);
+			}
+
+			return connection;
+		}
+
+		synchronized AsyncUaaConnectionImpl getAsyncConnection() {
+			if (asyncConnection == null) {
+				asyncConnection = new AsyncUaaConnectionImpl(helper);
+			}
+
+			return asyncConnection;
+		}
+	}
+
+	/**
+	 * One caller's handle to a shared connection
+	 */
+	private abstract class Handle {
+		private final Entry entry;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		Handle(Entry entry) {
+			this.entry = entry;
+		}
+
+		protected Entry entry() {
+			Assert.state(!closed.get(), "Connection has been closed");
+			return entry;
+		}
+
+		public UaaTokenStatistics getTokenStatistics() {
+			return entry().helper.getTokenStatistics();
+		}
+
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release(entry);
+			}
+		}
+	}
+
+	private class SharedConnection extends Handle implements UaaConnection {
+		SharedConnection(Entry entry) {
+			super(entry);
+		}
+
+		public UaaClientOperations clientOperations() {
+			return entry().getConnection().clientOperations();
+		}
+
+		public UaaGroupOperations groupOperations() {
+			return entry().getConnection().groupOperations();
+		}
+
+		public UaaUserOperations userOperations() {
+			return entry().getConnection().userOperations();
+		}
+	}
+
+	private class SharedAsyncConnection extends Handle implements AsyncUaaConnection {
+		SharedAsyncConnection(Entry entry) {
+			super(entry);
+		}
+
+		public AsyncUaaClientOperations clientOperations() {
+			return entry().getAsyncConnection().clientOperations();
+		}
+
+		public AsyncUaaGroupOperations groupOperations() {
+			return entry().getAsyncConnection().groupOperations();
+		}
+
+		public AsyncUaaUserOperations userOperations() {
+			return entry().getAsyncConnection().userOperations();
+		}
+	}
+}
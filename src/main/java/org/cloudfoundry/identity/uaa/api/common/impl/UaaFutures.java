@@ -0,0 +1,301 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.ListenableFutureCallbackRegistry;
+
+/**
+ * Static helpers for composing the {@link ListenableFuture} objects returned by the asynchronous APIs without blocking
+ * a thread between steps.
+ */
+public final class UaaFutures {
+	private UaaFutures() {
+
+	}
+
+	/**
+	 * The next asynchronous step of a composite operation
+	 * 
+	 * @param <S> the result type of the previous step
+	 * @param <T> the result type of this step
+	 */
+	public interface Continuation<S, T> {
+		/**
+		 * @param result the result of the previous step
+		 * @return the future result of this step
+		 * @throws Exception if the step cannot be started. The returned future will fail with this exception
+		 */
+		public ListenableFuture<T> apply(S result) throws Exception;
+	}
+
+	/**
+	 * Run <code>next</code> once <code>source</code> completes successfully. If either fails, so does the returned
+	 * future.
+	 * 
+	 * @param source the first step
+	 * @param next the step to run with the result of <code>source</code>
+	 * @return the future result of <code>next</code>
+	 */
+	public static <S, T> ListenableFuture<T> then(ListenableFuture<S> source, final Continuation<S, T> next) {
+		final SettableFuture<T> result = new SettableFuture<T>();
+
+		source.addCallback(new ListenableFutureCallback<S>() {
+			public void onSuccess(S value) {
+				try {
+					forward(next.apply(value), result);
+				}
+				catch (Throwable t) {
+					result.setException(t);
+				}
+			}
+
+			public void onFailure(Throwable t) {
+				result.setException(t);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Wait for all the given futures to complete, without blocking
+	 * 
+	 * @param futures the futures to wait on
+	 * @return a future whose result holds each input's result, in the order given. Fails as soon as any input fails
+	 */
+	public static ListenableFuture<List<Object>> all(ListenableFuture<?>... futures) {
+		final SettableFuture<List<Object>> result = new SettableFuture<List<Object>>();
+		final Object[] values = new Object[futures.length];
+		final AtomicInteger remaining = new AtomicInteger(futures.length);
+
+		if (futures.length == 0) {
+			result.set(Collections.<Object> emptyList());
+			return result;
+		}
+
+		for (int i = 0; i < futures.length; i++) {
+			final int index = i;
+
+			@SuppressWarnings("unchecked")
+			ListenableFuture<Object> future = (ListenableFuture<Object>) futures[i];
+			future.addCallback(new ListenableFutureCallback<Object>() {
+				public void onSuccess(Object value) {
+					values[index] = value;
+					if (remaining.decrementAndGet() == 0) {
+						result.set(new ArrayList<Object>(Arrays.asList(values)));
+					}
+				}
+
+				public void onFailure(Throwable t) {
+					result.setException(t);
+				}
+			});
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param value the value
+	 * @return a future that has already completed with the given value
+	 */
+	public static <T> ListenableFuture<T> immediate(T value) {
+		SettableFuture<T> result = new SettableFuture<T>();
+		result.set(value);
+		return result;
+	}
+
+	/**
+	 * Run a blocking call on an executor. If the executor rejects it, it runs on the calling thread instead.
+	 * 
+	 * @param call the blocking call
+	 * @param executor the executor to run it on
+	 * @return the future result of the call
+	 */
+	public static <T> ListenableFuture<T> submit(final Callable<T> call, Executor executor) {
+		final SettableFuture<T> result = new SettableFuture<T>();
+
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					result.set(call.call());
+				}
+				catch (Throwable t) {
+					result.setException(t);
+				}
+			}
+		};
+
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			task.run();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Discard the result of a future, keeping only its outcome
+	 * 
+	 * @param future the future
+	 * @return a future that completes with <code>null</code> when <code>future</code> succeeds
+	 */
+	public static ListenableFuture<Void> discard(ListenableFuture<?> future) {
+		return new ListenableFutureAdapter<Void, Object>(widen(future)) {
+			@Override
+			protected Void adapt(Object result) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Widen the result type of a future. Futures only produce values, so this is always safe.
+	 * 
+	 * @param future the future
+	 * @return the same future
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ListenableFuture<T> widen(ListenableFuture<? extends T> future) {
+		return (ListenableFuture<T>) future;
+	}
+
+	/**
+	 * Complete <code>target</code> with the outcome of <code>source</code>
+	 * 
+	 * @param source the future to copy from
+	 * @param target the future to copy to
+	 */
+	static <T> void forward(ListenableFuture<T> source, final SettableFuture<T> target) {
+		source.addCallback(new ListenableFutureCallback<T>() {
+			public void onSuccess(T value) {
+				target.set(value);
+			}
+
+			public void onFailure(Throwable t) {
+				target.setException(t);
+			}
+		});
+	}
+
+	/**
+	 * A {@link ListenableFuture} that is completed explicitly. Only the first call to {@link #set(Object)} or
+	 * {@link #setException(Throwable)} has any effect.
+	 */
+	static class SettableFuture<T> implements ListenableFuture<T> {
+		private final ListenableFutureCallbackRegistry<T> callbacks = new ListenableFutureCallbackRegistry<T>();
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private final AtomicInteger state = new AtomicInteger(0);
+
+		private volatile T value;
+
+		private volatile Throwable failure;
+
+		private volatile boolean cancelled;
+
+		boolean set(T value) {
+			if (!state.compareAndSet(0, 1)) {
+				return false;
+			}
+
+			this.value = value;
+			done.countDown();
+			callbacks.success(value);
+			return true;
+		}
+
+		boolean setException(Throwable failure) {
+			if (!state.compareAndSet(0, 1)) {
+				return false;
+			}
+
+			this.failure = failure;
+			done.countDown();
+			callbacks.failure(failure);
+			return true;
+		}
+
+		public void addCallback(ListenableFutureCallback<? super T> callback) {
+			callbacks.addCallback(callback);
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!state.compareAndSet(0, 1)) {
+				return false;
+			}
+
+			cancelled = true;
+			failure = new CancellationException();
+			done.countDown();
+			callbacks.failure(failure);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public T get() throws InterruptedException, ExecutionException {
+			done.await();
+			return report();
+		}
+
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+
+			return report();
+		}
+
+		private T report() throws ExecutionException {
+			if (cancelled) {
+				throw (CancellationException) failure;
+			}
+
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+
+			return value;
+		}
+	}
+}
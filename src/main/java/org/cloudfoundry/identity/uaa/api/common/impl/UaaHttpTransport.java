@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * The long-lived HTTP plumbing behind a single connection. Holds a pool of keep-alive connections and one
+ * {@link RestTemplate} that is reused for every call, so that message converters are only discovered once and TCP/TLS
+ * sessions are not re-established per request. A non-blocking {@link AsyncRestTemplate} is created on demand for
+ * asynchronous connections.
+ */
+public class UaaHttpTransport implements Closeable {
+	private static final Log log = LogFactory.getLog(UaaHttpTransport.class);
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final IdleConnectionEvictor evictor;
+
+	private final RestTemplate template;
+
+	private final UaaConnectionSettings settings;
+
+	private final RequestConfig requestConfig;
+
+	private final UaaRequestLimiter limiter;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private CloseableHttpAsyncClient asyncClient;
+
+	private AsyncRestTemplate asyncTemplate;
+
+	/**
+	 * Create the connection pool and template described by the given settings
+	 * 
+	 * @param settings the pool and timeout settings
+	 */
+	public UaaHttpTransport(UaaConnectionSettings settings) {
+		Assert.notNull(settings);
+
+		this.settings = settings;
+
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(settings.getMaxConnectionsTotal());
+		connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+		requestConfig = RequestConfig.custom()
+				.setConnectTimeout(timeout(settings.getConnectTimeout()))
+				.setSocketTimeout(timeout(settings.getReadTimeout()))
+				.setConnectionRequestTimeout(timeout(settings.getConnectTimeout())).build();
+
+		httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig).build();
+
+		if (settings.getIdleConnectionTimeout() > 0) {
+			evictor = new IdleConnectionEvictor(connectionManager, settings.getIdleConnectionTimeout(),
+					TimeUnit.MILLISECONDS);
+			evictor.start();
+		}
+		else {
+			evictor = null;
+		}
+
+		template = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+		template.setInterceptors(LoggerInterceptor.INTERCEPTOR);
+
+		limiter = new UaaRequestLimiter(settings.getMaxRequestsInFlight());
+	}
+
+	/**
+	 * @return the settings this transport was created with
+	 */
+	public UaaConnectionSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * @return the shared template. Safe for concurrent use
+	 */
+	public RestTemplate getRestTemplate() {
+		return template;
+	}
+
+	/**
+	 * Get the non-blocking template, starting its I/O threads on first use. It has its own connection pool, sized
+	 * and timed out with the same settings as the blocking one, and reuses the blocking template's message converters.
+	 * 
+	 * @return the shared asynchronous template. Safe for concurrent use
+	 */
+	public synchronized AsyncRestTemplate getAsyncRestTemplate() {
+		if (asyncTemplate == null) {
+			asyncClient = HttpAsyncClients.custom().setMaxConnTotal(settings.getMaxConnectionsTotal())
+					.setMaxConnPerRoute(settings.getMaxConnectionsPerRoute()).setDefaultRequestConfig(requestConfig)
+					.build();
+			asyncClient.start();
+
+			asyncTemplate = new AsyncRestTemplate(new HttpComponentsAsyncClientHttpRequestFactory(httpClient,
+					asyncClient), template);
+		}
+
+		return asyncTemplate;
+	}
+
+	/**
+	 * @return a JSON mapper for reading responses directly. Like the one in the shared template's message converter,
+	 * it has the default configuration, so both read the same JSON the same way
+	 */
+	ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	/**
+	 * @return the limiter bounding the number of asynchronous requests in flight
+	 */
+	UaaRequestLimiter getRequestLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * @return the pool of connections used by the blocking template
+	 */
+	PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	/**
+	 * @return true if idle connections are being evicted in the background
+	 */
+	boolean isEvictingIdleConnections() {
+		return evictor != null && evictor.isRunning();
+	}
+
+	/**
+	 * Stop evicting idle connections and close every pooled connection. The transport cannot be used afterwards.
+	 */
+	public void close() throws IOException {
+		if (evictor != null) {
+			evictor.shutdown();
+			try {
+				evictor.awaitTermination(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		httpClient.close();
+
+		synchronized (this) {
+			if (asyncClient != null) {
+				asyncClient.close();
+			}
+		}
+	}
+
+	private static int timeout(int millis) {
+		return millis > 0 ? millis : 0;
+	}
+
+	/**
+	 * An interceptor used to log information about HTTP calls
+	 * 
+	 * @author Josh Ghiloni
+	 * 
+	 */
+	private static class LoggerInterceptor implements ClientHttpRequestInterceptor {
+		public static final List<ClientHttpRequestInterceptor> INTERCEPTOR = Arrays
+				.<ClientHttpRequestInterceptor> asList(new LoggerInterceptor());
+
+		public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+				throws IOException {
+			if (log.isDebugEnabled()) {
+				log.debug(new String(body, "UTF-8"));
+			}
+
+			return execution.execute(request, body);
+		}
+	}
+}
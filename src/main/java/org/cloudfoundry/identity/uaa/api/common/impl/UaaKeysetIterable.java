@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.SortOrder;
+import org.springframework.util.Assert;
+
+/**
+ * Every result of a SCIM query, paged by key rather than by start index. The results are sorted by a unique attribute,
+ * and each page asks for the results whose key is greater than the last one seen, so every page costs the server the
+ * same however deep into the results it is, and results added or removed during the iteration do not shift the pages
+ * around. The query's start index and sort order are ignored. If the query asks for only some attributes, the key
+ * attribute is added to them.
+ * 
+ * Since each page depends on the last key of the one before it, pages cannot be fetched concurrently;
+ * {@link #fetchAll(int)} simply walks them in order.
+ * 
+ * @param <T> the type of resource
+ */
+public abstract class UaaKeysetIterable<T> extends UaaPagedIterable<T> {
+	private final String keyAttribute;
+
+	/**
+	 * @param request the query. Its count, if set, is the page size
+	 * @param keyAttribute the attribute the results are sorted by. Must be unique, and must be sorted by the server in
+	 * the same order as it compares values with <code>gt</code>
+	 * @param defaultPageSize the page size to use if the query does not set a count
+	 * @param executor the executor to read pages ahead on. Required if <code>prefetchDepth</code> is positive
+	 * @param prefetchDepth the maximum number of pages to read ahead of the one being iterated. If &lt;= 0, each page
+	 * is fetched only when the caller reaches it
+	 */
+	protected UaaKeysetIterable(FilterRequest request, String keyAttribute, int defaultPageSize, Executor executor,
+			int prefetchDepth) {
+		super(request, defaultPageSize, executor, prefetchDepth);
+
+		Assert.hasText(keyAttribute);
+		this.keyAttribute = keyAttribute;
+	}
+
+	/**
+	 * @return the attribute the results are sorted and paged by
+	 */
+	public String getKeyAttribute() {
+		return keyAttribute;
+	}
+
+	/**
+	 * @param resource a result
+	 * @return the value of its key attribute
+	 */
+	protected abstract Object keyOf(T resource);
+
+	@Override
+	protected FilterRequest firstPage(FilterRequest request, int pageSize) {
+		return withKey(request).withSort(keyAttribute, SortOrder.ASCENDING).withPage(1, pageSize);
+	}
+
+	@Override
+	protected FilterRequest nextPage(FilterRequest request, FilterRequest page, PagedResult<T> result) {
+		if (result.getResources().size() >= result.getTotalResults()) {
+			return null;
+		}
+
+		T last = null;
+		for (Iterator<T> i = result.getResources().iterator(); i.hasNext();) {
+			last = i.next();
+		}
+
+		Object key = keyOf(last);
+		Assert.state(key != null, "Result has no " + keyAttribute + " to page by");
+
+		return withKey(request).after(keyAttribute, key).withSort(keyAttribute, SortOrder.ASCENDING)
+				.withPage(1, page.getCount());
+	}
+
+	/**
+	 * @param request the query
+	 * @return the query, asking for the key attribute too if it only asks for some attributes
+	 */
+	private FilterRequest withKey(FilterRequest request) {
+		List<String> attributes = request.getAttributes();
+		if (attributes == null || attributes.isEmpty() || attributes.contains(keyAttribute)) {
+			return request;
+		}
+
+		List<String> withKey = new ArrayList<String>(attributes);
+		withKey.add(keyAttribute);
+
+		return request.withAttributes(withKey.toArray(new String[withKey.size()]));
+	}
+
+	@Override
+	public List<T> fetchAll(int parallelism) {
+		List<T> results = new ArrayList<T>();
+		for (T resource : this) {
+			results.add(resource);
+		}
+
+		return results;
+	}
+
+	@Override
+	public int fetchAll(int parallelism, ResourceConsumer<? super T> consumer) {
+		Assert.notNull(consumer);
+
+		int delivered = 0;
+		for (T resource : this) {
+			consumer.accept(resource);
+			delivered++;
+		}
+
+		return delivered;
+	}
+}
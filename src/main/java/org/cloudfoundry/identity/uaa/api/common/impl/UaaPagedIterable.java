@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.springframework.util.Assert;
+
+/**
+ * Every result of a SCIM query, fetched one page at a time as it is iterated. Only the page being iterated, plus any
+ * pages read ahead, is held in memory, so arbitrarily large result sets can be walked. Each call to
+ * {@link #iterator()} starts again from the first page.
+ * 
+ * Pages can be read ahead in the background, so that the next page is already on its way while the caller works
+ * through the current one. At most the configured number of pages are buffered; once the buffer is full, nothing more
+ * is fetched until the caller catches up, so an iterator that is abandoned part way stops fetching on its own.
+ * 
+ * Alternatively, every result can be fetched at once with {@link #fetchAll(int)}. Once the first page has given the
+ * total number of results, the remaining pages are fetched concurrently.
+ * 
+ * @param <T> the type of resource
+ */
+public abstract class UaaPagedIterable<T> implements Iterable<T> {
+	private final FilterRequest request;
+
+	private final int pageSize;
+
+	private final Executor executor;
+
+	private final int prefetchDepth;
+
+	/**
+	 * Create an iterable that fetches each page only when the caller reaches it
+	 * 
+	 * @param request the query. Its start index, if set, is where iteration begins; its count, if set, is the page
+	 * size
+	 * @param defaultPageSize the page size to use if the query does not set a count
+	 */
+	protected UaaPagedIterable(FilterRequest request, int defaultPageSize) {
+		this(request, defaultPageSize, null, 0);
+	}
+
+	/**
+	 * @param request the query. Its start index, if set, is where iteration begins; its count, if set, is the page
+	 * size
+	 * @param defaultPageSize the page size to use if the query does not set a count
+	 * @param executor the executor to read pages ahead on. Required if <code>prefetchDepth</code> is positive
+	 * @param prefetchDepth the maximum number of pages to read ahead of the one being iterated. If &lt;= 0, each page
+	 * is fetched only when the caller reaches it
+	 */
+	protected UaaPagedIterable(FilterRequest request, int defaultPageSize, Executor executor, int prefetchDepth) {
+		Assert.notNull(request);
+		Assert.isTrue(prefetchDepth <= 0 || executor != null, "An executor is required to read pages ahead");
+
+		this.request = request;
+		this.pageSize = request.getCount() > 0 ? request.getCount() : defaultPageSize;
+		this.executor = executor;
+		this.prefetchDepth = Math.max(prefetchDepth, 0);
+	}
+
+	/**
+	 * Fetch one page of results. May be called from a background thread when reading ahead.
+	 * 
+	 * @param page the query, with the start index and count of the page
+	 * @return the page
+	 */
+	protected abstract PagedResult<T> fetch(FilterRequest page);
+
+	/**
+	 * Fetch one page of results, handing each result to the consumer instead of collecting them. By default the page
+	 * is fetched with {@link #fetch(FilterRequest)} and then handed over; override this to decode the results as they
+	 * are read.
+	 * 
+	 * @param page the query, with the start index and count of the page
+	 * @param consumer receives the results on the page
+	 * @return the paging information of the page, or null if there is no such page. Its resources need not be set
+	 */
+	protected PagedResult<T> fetch(FilterRequest page, ResourceConsumer<? super T> consumer) {
+		PagedResult<T> result = fetch(page);
+		if (result != null && result.getResources() != null) {
+			for (T resource : result.getResources()) {
+				consumer.accept(resource);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Work out the query for the first page. By default, pages are addressed by their start index.
+	 * 
+	 * @param request the query being iterated over
+	 * @param pageSize the page size
+	 * @return the query for the first page
+	 */
+	protected FilterRequest firstPage(FilterRequest request, int pageSize) {
+		return request.withPage(Math.max(request.getStart(), 1), pageSize);
+	}
+
+	/**
+	 * Work out the query for the page after the given one
+	 * 
+	 * @param request the query being iterated over
+	 * @param page the query for the page just fetched
+	 * @param result the page just fetched, which is not empty
+	 * @return the query for the next page, or null if that was the last page
+	 */
+	protected FilterRequest nextPage(FilterRequest request, FilterRequest page, PagedResult<T> result) {
+		int start = page.getStart() + result.getResources().size();
+		return start > result.getTotalResults() ? null : request.withPage(start, page.getCount());
+	}
+
+	public Iterator<T> iterator() {
+		return new PageIterator(firstPage(request, pageSize));
+	}
+
+	/**
+	 * Fetch every result, fetching the pages after the first one concurrently
+	 * 
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @return the results, in the order the server returned them
+	 */
+	public List<T> fetchAll(int parallelism) {
+		final Map<Integer, Collection<T>> pages = Collections.synchronizedMap(new TreeMap<Integer, Collection<T>>());
+		fetchAll(parallelism, new PageHandler() {
+			public PageSize page(int index, FilterRequest page) {
+				PagedResult<T> result = fetch(page);
+				if (result == null || result.getResources() == null) {
+					return null;
+				}
+
+				pages.put(index, result.getResources());
+				return new PageSize(result.getResources().size(), result.getTotalResults());
+			}
+		});
+
+		List<T> results = new ArrayList<T>();
+		for (Collection<T> page : pages.values()) {
+			results.addAll(page);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Fetch every result, fetching the pages after the first one concurrently, and hand each result to the consumer
+	 * as soon as it has been read. The consumer is never called by two threads at once, but it may be called from a
+	 * background thread.
+	 * 
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @param consumer receives the results, in the order they arrive, which need not be the order the server returned
+	 * them in
+	 * @return the number of results delivered
+	 * @see #fetch(FilterRequest, ResourceConsumer)
+	 */
+	public int fetchAll(int parallelism, final ResourceConsumer<? super T> consumer) {
+		Assert.notNull(consumer);
+
+		final AtomicInteger delivered = new AtomicInteger();
+		fetchAll(parallelism, new PageHandler() {
+			public PageSize page(int index, FilterRequest page) {
+				final AtomicInteger count = new AtomicInteger();
+				PagedResult<T> result = fetch(page, new ResourceConsumer<T>() {
+					public void accept(T resource) {
+						synchronized (consumer) {
+							consumer.accept(resource);
+						}
+
+						count.incrementAndGet();
+					}
+				});
+
+				delivered.addAndGet(count.get());
+				return result == null ? null : new PageSize(count.get(), result.getTotalResults());
+			}
+		});
+
+		return delivered.get();
+	}
+
+	/**
+	 * Fetch the first page, then every remaining page with up to <code>parallelism</code> requests at once. The
+	 * remaining start indexes are worked out from the first page's total and size, so results added or removed on the
+	 * server while the pages are fetched may be missed or repeated.
+	 */
+	private void fetchAll(int parallelism, final PageHandler handler) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		Assert.state(parallelism == 1 || executor != null, "An executor is required to fetch pages concurrently");
+
+		FilterRequest firstPage = firstPage(request, pageSize);
+		PageSize first = handler.page(0, firstPage);
+		if (first == null || first.results == 0) {
+			return;
+		}
+
+		// the server may return fewer results per page than were asked for
+		final int step = first.results;
+		final List<Integer> starts = new ArrayList<Integer>();
+		for (int start = firstPage.getStart() + step; start <= first.total; start += step) {
+			starts.add(start);
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run() {
+				try {
+					for (int i = next.getAndIncrement(); i < starts.size(); i = next.getAndIncrement()) {
+						handler.page(i + 1, request.withPage(starts.get(i), step));
+					}
+				}
+				catch (RuntimeException e) {
+					// stop the other workers from starting new pages
+					next.set(starts.size());
+					throw e;
+				}
+			}
+		};
+
+		// the calling thread is one of the workers, and takes on all the pages if the executor rejects the others
+		List<FutureTask<Void>> workers = new ArrayList<FutureTask<Void>>();
+		for (int i = 1; i < Math.min(parallelism, starts.size()); i++) {
+			FutureTask<Void> task = new FutureTask<Void>(worker, null);
+			try {
+				executor.execute(task);
+				workers.add(task);
+			}
+			catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+
+		RuntimeException failure = null;
+		try {
+			worker.run();
+		}
+		catch (RuntimeException e) {
+			failure = e;
+		}
+
+		for (FutureTask<Void> task : workers) {
+			try {
+				UaaConnectionHelper.join(task);
+			}
+			catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Fetches and takes the results of each page for {@link UaaPagedIterable#fetchAll(int, PageHandler)}. Called by
+	 * several threads at once.
+	 */
+	private interface PageHandler {
+		/**
+		 * @param index the 0-based position of the page
+		 * @param page the query for the page
+		 * @return the size of the page, or null if there is no such page
+		 */
+		PageSize page(int index, FilterRequest page);
+	}
+
+	/**
+	 * The number of results on a page, and in the whole query
+	 */
+	private static class PageSize {
+		private final int results;
+
+		private final int total;
+
+		PageSize(int results, int total) {
+			this.results = results;
+			this.total = total;
+		}
+	}
+
+	/**
+	 * Walks the pages in order, moving on to the next page when the current one is used up. Pages are fetched one
+	 * after the other, since where each page starts depends on the one before it.
+	 */
+	private class PageIterator implements Iterator<T> {
+		private Iterator<T> page = Collections.<T> emptyList().iterator();
+
+		private final Queue<Collection<T>> ready = new LinkedList<Collection<T>>();
+
+		private FilterRequest nextPage;
+
+		private boolean fetching;
+
+		private boolean exhausted;
+
+		private RuntimeException failure;
+
+		PageIterator(FilterRequest firstPage) {
+			this.nextPage = firstPage;
+		}
+
+		public boolean hasNext() {
+			while (!page.hasNext() && takePage()) {
+				// skip empty pages
+			}
+
+			return page.hasNext();
+		}
+
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return page.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Move on to the next page, waiting for it if it has not arrived yet
+		 * 
+		 * @return false if there are no more pages
+		 */
+		private synchronized boolean takePage() {
+			if (prefetchDepth == 0 && !exhausted) {
+				fetchPage();
+			}
+
+			readAhead();
+			while (ready.isEmpty() && fetching) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for a page", e);
+				}
+			}
+
+			if (ready.isEmpty()) {
+				if (failure != null) {
+					RuntimeException e = failure;
+					failure = null;
+					throw e;
+				}
+
+				return false;
+			}
+
+			page = ready.remove().iterator();
+			readAhead();
+
+			return true;
+		}
+
+		/**
+		 * Start fetching the next page in the background, unless one is already being fetched or the buffer is full
+		 */
+		private synchronized void readAhead() {
+			if (fetching || exhausted || failure != null || ready.size() >= prefetchDepth) {
+				return;
+			}
+
+			fetching = true;
+			Runnable fetch = new Runnable() {
+				public void run() {
+					fetchPage();
+				}
+			};
+
+			try {
+				executor.execute(fetch);
+			}
+			catch (RejectedExecutionException e) {
+				fetch.run();
+			}
+		}
+
+		private void fetchPage() {
+			FilterRequest page;
+			synchronized (this) {
+				page = nextPage;
+			}
+
+			PagedResult<T> result = null;
+			RuntimeException error = null;
+			try {
+				result = fetch(page);
+			}
+			catch (RuntimeException e) {
+				error = e;
+			}
+
+			synchronized (this) {
+				fetching = false;
+				if (error != null) {
+					failure = error;
+					exhausted = true;
+				}
+				else if (result == null || result.getResources() == null || result.getResources().isEmpty()) {
+					exhausted = true;
+				}
+				else {
+					ready.add(result.getResources());
+					nextPage = nextPage(request, page, result);
+					exhausted = nextPage == null;
+				}
+
+				notifyAll();
+				if (prefetchDepth > 0) {
+					readAhead();
+				}
+			}
+		}
+	}
+}
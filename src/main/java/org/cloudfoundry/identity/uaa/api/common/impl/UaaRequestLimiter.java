@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.SettableFuture;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+/**
+ * Bounds the number of asynchronous requests in flight. Requests over the limit are queued and started as earlier
+ * ones complete; no thread is ever blocked waiting for a slot. A queued request is started on the thread that
+ * completes an earlier one, usually an I/O thread, so starting a request must not block: anything slow, such as
+ * obtaining an access token, has to be done before it is submitted. Cancelling a returned future drops the request
+ * from the queue, or cancels it if it has already started.
+ */
+class UaaRequestLimiter {
+	private final int maxInFlight;
+
+	private final Queue<Pending<?>> waiting = new LinkedList<Pending<?>>();
+
+	private int inFlight;
+
+	/**
+	 * Slots given back on this thread while it is already releasing, which happens when a queued request completes as
+	 * soon as it is started. Handing them on from the outer loop keeps the stack from growing with the queue.
+	 */
+	private final ThreadLocal<int[]> deferred = new ThreadLocal<int[]>();
+
+	UaaRequestLimiter(int maxInFlight) {
+		Assert.isTrue(maxInFlight > 0, "maxInFlight must be positive");
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Start the request now if there is room, otherwise once a slot frees up
+	 * 
+	 * @param request starts the request and returns its future
+	 * @return the future result of the request
+	 */
+	<T> ListenableFuture<T> submit(Callable<ListenableFuture<T>> request) {
+		Pending<T> pending = new Pending<T>(request);
+
+		boolean startNow = false;
+		synchronized (this) {
+			if (inFlight < maxInFlight) {
+				inFlight++;
+				startNow = true;
+			}
+			else {
+				waiting.add(pending);
+			}
+		}
+
+		if (startNow && !pending.start()) {
+			release();
+		}
+
+		return pending.result;
+	}
+
+	/**
+	 * Hand the slot of a completed request to the next queued one, or give it back
+	 */
+	private void release() {
+		int[] slots = deferred.get();
+		if (slots != null) {
+			slots[0]++;
+			return;
+		}
+
+		slots = new int[] { 1 };
+		deferred.set(slots);
+		try {
+			while (slots[0] > 0) {
+				slots[0]--;
+				handOn();
+			}
+		}
+		finally {
+			deferred.remove();
+		}
+	}
+
+	/**
+	 * Hand one slot on. Queued requests that fail or are cancelled before they are sent do not hold the slot, so keep
+	 * going until one actually starts.
+	 */
+	private void handOn() {
+		while (true) {
+			Pending<?> next = null;
+			synchronized (this) {
+				next = waiting.poll();
+				if (next == null) {
+					inFlight--;
+					return;
+				}
+			}
+
+			if (next.start()) {
+				return;
+			}
+		}
+	}
+
+	private class Pending<T> {
+		private final Callable<ListenableFuture<T>> request;
+
+		private final SettableFuture<T> result = new SettableFuture<T>();
+
+		private final AtomicBoolean holdsSlot = new AtomicBoolean();
+
+		private volatile ListenableFuture<T> started;
+
+		Pending(Callable<ListenableFuture<T>> request) {
+			this.request = request;
+
+			result.addCallback(new ListenableFutureCallback<T>() {
+				public void onSuccess(T value) {
+					// nothing to undo
+				}
+
+				public void onFailure(Throwable t) {
+					if (result.isCancelled()) {
+						cancelled();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Drop the request if it is still queued, otherwise cancel it. If it is being started right now,
+		 * {@link #start()} sees the cancellation once it has the future.
+		 */
+		private void cancelled() {
+			synchronized (UaaRequestLimiter.this) {
+				if (waiting.remove(this)) {
+					return;
+				}
+			}
+
+			ListenableFuture<T> future = started;
+			if (future != null) {
+				future.cancel(true);
+				finished();
+			}
+		}
+
+		/**
+		 * Give back the slot of a started request. A cancelled request may never call back, so this is called both
+		 * on completion and on cancellation, and only the first call counts.
+		 */
+		private void finished() {
+			if (holdsSlot.compareAndSet(true, false)) {
+				release();
+			}
+		}
+
+		/**
+		 * @return true if the request was sent, false if it failed or was cancelled before that
+		 */
+		boolean start() {
+			if (result.isDone()) {
+				return false;
+			}
+
+			ListenableFuture<T> future = null;
+			try {
+				future = request.call();
+			}
+			catch (Throwable t) {
+				result.setException(t);
+				return false;
+			}
+
+			holdsSlot.set(true);
+			started = future;
+
+			future.addCallback(new ListenableFutureCallback<T>() {
+				public void onSuccess(T value) {
+					finished();
+					result.set(value);
+				}
+
+				public void onFailure(Throwable t) {
+					finished();
+					result.setException(t);
+				}
+			});
+
+			if (result.isCancelled()) {
+				future.cancel(true);
+				finished();
+			}
+
+			return true;
+		}
+	}
+}
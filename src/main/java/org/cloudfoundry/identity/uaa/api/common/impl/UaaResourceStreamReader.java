@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.client.ResponseExtractor;
+
+/**
+ * Reads a page of SCIM results straight off the response stream. Each element of the <code>resources</code> array is
+ * decoded and handed to a consumer as soon as it has been read, so neither the whole page nor a collection of its
+ * resources is ever held in memory, and the caller sees the first resource before the rest have arrived.
+ * 
+ * @param <T> the type of resource
+ */
+class UaaResourceStreamReader<T> implements ResponseExtractor<PagedResult<T>> {
+	private static final TypeReference<List<String>> STRING_LIST = new TypeReference<List<String>>() {
+	};
+
+	private final ObjectMapper mapper;
+
+	private final Class<T> resourceType;
+
+	private final ResourceConsumer<? super T> consumer;
+
+	/**
+	 * @param mapper the mapper to decode each resource with
+	 * @param resourceType the type of resource
+	 * @param consumer receives each resource as it is decoded
+	 */
+	UaaResourceStreamReader(ObjectMapper mapper, Class<T> resourceType, ResourceConsumer<? super T> consumer) {
+		this.mapper = mapper;
+		this.resourceType = resourceType;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * @return the paging information of the page. Its resources are always null, since they have been handed to the
+	 * consumer instead
+	 */
+	public PagedResult<T> extractData(ClientHttpResponse response) throws IOException {
+		PagedResult<T> result = new PagedResult<T>() {
+		};
+
+		JsonParser parser = mapper.getJsonFactory().createJsonParser(response.getBody());
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new HttpMessageNotReadableException("Expected a page of SCIM results");
+			}
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+
+				if ("resources".equals(field) && value == JsonToken.START_ARRAY) {
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						consumer.accept(mapper.readValue(parser, resourceType));
+					}
+				}
+				else if ("startIndex".equals(field) && value.isNumeric()) {
+					result.setStartIndex(parser.getIntValue());
+				}
+				else if ("itemsPerPage".equals(field) && value.isNumeric()) {
+					result.setItemsPerPage(parser.getIntValue());
+				}
+				else if ("totalResults".equals(field) && value.isNumeric()) {
+					result.setTotalResults(parser.getIntValue());
+				}
+				else if ("schemas".equals(field) && value == JsonToken.START_ARRAY) {
+					result.setSchemas(mapper.<List<String>> readValue(parser, STRING_LIST));
+				}
+				else {
+					parser.skipChildren();
+				}
+			}
+		}
+		finally {
+			parser.close();
+		}
+
+		return result;
+	}
+}
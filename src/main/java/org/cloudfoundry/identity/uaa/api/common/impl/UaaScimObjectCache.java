@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map of SCIM object URLs to the last body read from them, along with the version of the object it holds.
+ * The body is kept as serialized JSON rather than as an object, so that each caller decodes its own copy and nobody
+ * can change the cached one. Entries never expire; they are only worth anything because the server is asked whether
+ * the version is still current before one is used. When full, the least recently used entry is dropped.
+ */
+class UaaScimObjectCache {
+	private final int maxSize;
+
+	private final Map<String, CachedObject> entries;
+
+	/**
+	 * @param maxSize the maximum number of objects to remember. If &lt;= 0, nothing is cached
+	 */
+	UaaScimObjectCache(final int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, CachedObject>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedObject> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return true if objects are cached at all
+	 */
+	boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * @param url the URL of the object
+	 * @return the cached entry, or null if the object is not cached
+	 */
+	synchronized CachedObject get(String url) {
+		return entries.get(url);
+	}
+
+	/**
+	 * @param url the URL of the object
+	 * @param version the version of the object
+	 * @param body the object, serialized
+	 */
+	synchronized void put(String url, String version, byte[] body) {
+		if (maxSize <= 0 || url == null || version == null) {
+			return;
+		}
+
+		entries.put(url, new CachedObject(version, body));
+	}
+
+	/**
+	 * @param url the URL of the object
+	 */
+	synchronized void remove(String url) {
+		entries.remove(url);
+	}
+
+	/**
+	 * A cached object
+	 */
+	static class CachedObject {
+		private final String version;
+
+		private final byte[] body;
+
+		CachedObject(String version, byte[] body) {
+			this.version = version;
+			this.body = body;
+		}
+
+		/**
+		 * @return the version of the object
+		 */
+		String getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the object, serialized
+		 */
+		byte[] getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject;
+
+/**
+ * A change to a SCIM object, expressed as a function of its current state so that it can be applied again if another
+ * client changes the object first
+ * 
+ * @param <ResourceType> the type of the object as read from the server
+ * @param <RequestType> the type of the modification request
+ * 
+ * @see UaaConnectionHelper#updateScimObject(String, Class, Object, java.util.concurrent.Callable, UaaScimUpdate,
+ * Object...)
+ */
+public interface UaaScimUpdate<ResourceType, RequestType extends ScimMetaObject> {
+	/**
+	 * @param current the object as last read from the server
+	 * @return the modification request, carrying the version of <code>current</code>, or null if the object needs no
+	 * change
+	 */
+	public RequestType apply(ResourceType current);
+}
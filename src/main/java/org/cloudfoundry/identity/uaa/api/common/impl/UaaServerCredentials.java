@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.net.URL;
+
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.springframework.util.Assert;
+
+/**
+ * Identifies what is shared between connections: a server and the credentials used to access it.
+ * {@link URL#equals(Object)} may resolve host names, so the URL is compared by its string form.
+ */
+class UaaServerCredentials {
+	private final String url;
+
+	private final UaaCredentials creds;
+
+	UaaServerCredentials(URL url, UaaCredentials creds) {
+		Assert.notNull(url);
+		Assert.notNull(creds);
+
+		this.url = url.toExternalForm();
+		this.creds = creds;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof UaaServerCredentials)) {
+			return false;
+		}
+
+		UaaServerCredentials other = (UaaServerCredentials) o;
+		return url.equals(other.url) && creds.equals(other.creds);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * url.hashCode() + creds.hashCode();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.springframework.util.Assert;
+
+/**
+ * Shares one {@link UaaTokenManager} between every connection to the same server with the same credentials, so that
+ * they all use one access token instead of each obtaining their own. Managers are keyed by the base URL and the full
+ * credentials, which determine the client id, grant type and user; the secret and password are part of the key so
+ * that a caller with the wrong ones never gets a token that was obtained with the right ones.
+ * 
+ * The cache holds at most a fixed number of managers. Managers that nobody is using and whose token has expired are
+ * dropped first; beyond that, the least recently acquired ones are. A manager dropped while still in use keeps working
+ * for its existing users, it just is not handed out again.
+ * 
+ * The token renewal settings are part of the key as well, so connections that renew their tokens differently each get
+ * a manager, and a token, of their own.
+ */
+public class UaaTokenCache {
+	/**
+	 * The default number of token managers held by the shared cache
+	 */
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	private static final UaaTokenCache SHARED = new UaaTokenCache(DEFAULT_MAX_SIZE);
+
+	private final int maxSize;
+
+	private final Map<Key, UaaTokenManager> managers = new LinkedHashMap<Key, UaaTokenManager>(16, 0.75f, true);
+
+	/**
+	 * @param maxSize the maximum number of token managers to hold
+	 */
+	public UaaTokenCache(int maxSize) {
+		Assert.isTrue(maxSize > 0, "maxSize must be positive");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the cache shared by every connection in this process
+	 */
+	public static UaaTokenCache getSharedInstance() {
+		return SHARED;
+	}
+
+	/**
+	 * Get the token manager for the given server, credentials and renewal settings, creating it if necessary. The
+	 * caller becomes one of its users and must {@link UaaTokenManager#release() release} it when done with it.
+	 * 
+	 * @param url the base URL of the UAA server
+	 * @param creds the credentials to obtain tokens for
+	 * @param settings the token renewal settings
+	 * @return the shared token manager
+	 */
+	public UaaTokenManager acquire(URL url, UaaCredentials creds, UaaConnectionSettings settings) {
+		Assert.notNull(url);
+		Assert.notNull(creds);
+		Assert.notNull(settings);
+
+		Key key = new Key(new UaaServerCredentials(url, creds), settings);
+		UaaTokenManager manager = null;
+		synchronized (this) {
+			manager = managers.get(key);
+			if (manager == null) {
+				manager = new UaaTokenManager(url, creds, settings);
+				managers.put(key, manager);
+				evict();
+
+				return manager;
+			}
+		}
+
+		// a manager holds its lock while calling the token endpoint, so never take it while holding the cache's
+		manager.retain();
+		return manager;
+	}
+
+	/**
+	 * @return the number of token managers currently held
+	 */
+	public synchronized int size() {
+		return managers.size();
+	}
+
+	/**
+	 * Drop every token manager. Managers still in use keep working for their existing users.
+	 */
+	public synchronized void clear() {
+		managers.clear();
+	}
+
+	/**
+	 * Bring the cache back within its bound, dropping worthless managers first and then the least recently used. Only
+	 * calls {@link UaaTokenManager#isDisposable()}, which does not block.
+	 */
+	private void evict() {
+		if (managers.size() <= maxSize) {
+			return;
+		}
+
+		for (Iterator<UaaTokenManager> i = managers.values().iterator(); i.hasNext();) {
+			if (i.next().isDisposable()) {
+				i.remove();
+			}
+		}
+
+		for (Iterator<UaaTokenManager> i = managers.values().iterator(); managers.size() > maxSize && i.hasNext();) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/**
+	 * Identifies a manager: the server and credentials it obtains tokens for, and how it renews them
+	 */
+	private static class Key {
+		private final UaaServerCredentials serverCredentials;
+
+		private final double refreshFraction;
+
+		private final double refreshJitter;
+
+		Key(UaaServerCredentials serverCredentials, UaaConnectionSettings settings) {
+			this.serverCredentials = serverCredentials;
+			this.refreshFraction = settings.getTokenRefreshFraction();
+			this.refreshJitter = settings.getTokenRefreshJitter();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) o;
+			return serverCredentials.equals(other.serverCredentials)
+					&& Double.compare(refreshFraction, other.refreshFraction) == 0
+					&& Double.compare(refreshJitter, other.refreshJitter) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = serverCredentials.hashCode();
+			hash = 31 * hash + Double.valueOf(refreshFraction).hashCode();
+			return 31 * hash + Double.valueOf(refreshJitter).hashCode();
+		}
+	}
+}
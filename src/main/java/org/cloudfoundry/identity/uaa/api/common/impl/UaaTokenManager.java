@@ -0,0 +1,426 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenGrantType;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.client.token.AccessTokenProviderChain;
+import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
+import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitResourceDetails;
+import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
+import org.springframework.security.oauth2.common.AuthenticationScheme;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Obtains and renews the OAuth access token for one set of credentials. Safe to share between threads: the current
+ * token is published through a volatile field, and at most one call to the token endpoint is in flight at a time.
+ * Callers that find the token expired while another thread is renewing it wait for that renewal rather than starting
+ * their own.
+ * 
+ * If {@link UaaConnectionSettings#getTokenRefreshFraction()} is set, the token is also renewed in the background
+ * before it expires, so that requests rarely have to wait for the token endpoint. Should a background renewal fail,
+ * the token is renewed on demand as usual once it expires. Background renewal stops once every user of the manager
+ * has {@link #release() released} it.
+ * 
+ * Connections get their manager from the {@link UaaTokenCache}, so that connections with the same credentials share
+ * one token.
+ */
+public class UaaTokenManager {
+	private static final AccessTokenProviderChain CHAIN = new AccessTokenProviderChain(
+			Arrays.<AccessTokenProvider> asList(new ClientCredentialsAccessTokenProvider(),
+					new ImplicitAccessTokenProvider(), new ResourceOwnerPasswordAccessTokenProvider()));
+
+	private static final Log log = LogFactory.getLog(UaaTokenManager.class);
+
+	private static final ScheduledExecutorService REFRESHER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "uaa-token-refresher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final Object lock = new Object();
+
+	private final OAuth2ProtectedResourceDetails details;
+
+	private final UaaTokenGrantType grantType;
+
+	private final AtomicLong obtainCount = new AtomicLong();
+
+	private final AtomicLong refreshCount = new AtomicLong();
+
+	private final AtomicLong refreshFailureCount = new AtomicLong();
+
+	private final double refreshFraction;
+
+	private final double refreshJitter;
+
+	private volatile OAuth2AccessToken token;
+
+	private ScheduledFuture<?> scheduledRefresh;
+
+	// written under the lock, but read without it by isDisposable
+	private volatile int users = 1;
+
+	/**
+	 * @param url the base URL of the UAA server
+	 * @param creds the credentials to obtain tokens for
+	 * @param settings the background renewal settings
+	 */
+	public UaaTokenManager(URL url, UaaCredentials creds, UaaConnectionSettings settings) {
+		Assert.isTrue(settings.getTokenRefreshFraction() < 1, "tokenRefreshFraction must be less than 1");
+		Assert.isTrue(settings.getTokenRefreshJitter() >= 0 && settings.getTokenRefreshJitter() <= 1,
+				"tokenRefreshJitter must be between 0 and 1");
+
+		this.details = getResourceDetails(url, creds);
+		this.grantType = getGrantType(details);
+		this.refreshFraction = settings.getTokenRefreshFraction();
+		this.refreshJitter = settings.getTokenRefreshJitter();
+	}
+
+	/**
+	 * Get the OAuth access token, obtaining or refreshing it first if necessary. While the current token is valid
+	 * this never blocks.
+	 * 
+	 * @return the access token
+	 */
+	public OAuth2AccessToken getAccessToken() {
+		OAuth2AccessToken current = token;
+		if (current != null && !current.isExpired()) {
+			return current;
+		}
+
+		synchronized (lock) {
+			// another thread may have renewed the token while we waited for the lock
+			current = token;
+			if (current == null) {
+				current = obtainAccessToken();
+			}
+			else if (current.isExpired()) {
+				current = renewAccessToken(current);
+			}
+
+			setToken(current);
+			return current;
+		}
+	}
+
+	/**
+	 * Replace a token that the server has rejected even though it has not yet expired by our clock. When several
+	 * threads report the same rejected token, only the first renews it; the others get the token it obtained.
+	 * 
+	 * @param rejectedValue the value of the rejected token
+	 * @return a token to retry with
+	 */
+	public OAuth2AccessToken replaceRejectedToken(String rejectedValue) {
+		synchronized (lock) {
+			OAuth2AccessToken current = token;
+			if (current == null) {
+				current = obtainAccessToken();
+			}
+			else if (current.getValue().equals(rejectedValue)) {
+				current = renewAccessToken(current);
+			}
+
+			setToken(current);
+			return current;
+		}
+	}
+
+	/**
+	 * Get the OAuth access token without blocking the calling thread. If the current token is valid the returned
+	 * future has already completed; otherwise the token is obtained or renewed on the given executor.
+	 * 
+	 * @param executor the executor to call the token endpoint on
+	 * @return the future access token
+	 * @see #getAccessToken()
+	 */
+	public ListenableFuture<OAuth2AccessToken> getAccessTokenAsync(Executor executor) {
+		OAuth2AccessToken current = token;
+		if (current != null && !current.isExpired()) {
+			return UaaFutures.immediate(current);
+		}
+
+		return UaaFutures.submit(new Callable<OAuth2AccessToken>() {
+			public OAuth2AccessToken call() {
+				return getAccessToken();
+			}
+		}, executor);
+	}
+
+	/**
+	 * Replace a rejected token without blocking the calling thread. If another thread has already replaced it, the
+	 * returned future has already completed with the replacement; otherwise the token is renewed on the given
+	 * executor.
+	 * 
+	 * @param rejectedValue the value of the rejected token
+	 * @param executor the executor to call the token endpoint on
+	 * @return the future token to retry with
+	 * @see #replaceRejectedToken(String)
+	 */
+	public ListenableFuture<OAuth2AccessToken> replaceRejectedTokenAsync(final String rejectedValue,
+			Executor executor) {
+		OAuth2AccessToken current = token;
+		if (current != null && !current.isExpired() && !current.getValue().equals(rejectedValue)) {
+			return UaaFutures.immediate(current);
+		}
+
+		return UaaFutures.submit(new Callable<OAuth2AccessToken>() {
+			public OAuth2AccessToken call() {
+				return replaceRejectedToken(rejectedValue);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Register another user of this manager. The creator of a manager is its first user.
+	 */
+	public void retain() {
+		synchronized (lock) {
+			users++;
+			if (users == 1) {
+				scheduleRefresh(token);
+			}
+		}
+	}
+
+	/**
+	 * Unregister a user of this manager. Once there are no users left the token is no longer renewed in the
+	 * background, although it is still renewed on demand.
+	 */
+	public void release() {
+		synchronized (lock) {
+			Assert.state(users > 0, "Token manager has already been released by all its users");
+
+			users--;
+			if (users == 0) {
+				cancelRefresh();
+			}
+		}
+	}
+
+	/**
+	 * Never blocks, so that it can be called while the token endpoint is being called on another thread.
+	 * 
+	 * @return true if nobody is using this manager and it holds no valid token, so it is worthless to keep around
+	 */
+	boolean isDisposable() {
+		OAuth2AccessToken current = token;
+		return users == 0 && (current == null || current.isExpired());
+	}
+
+	/**
+	 * Publish a new token and, if background renewal is enabled, schedule its renewal. Must hold the lock.
+	 * 
+	 * @param current the new token
+	 */
+	private void setToken(OAuth2AccessToken current) {
+		if (current == token) {
+			return;
+		}
+
+		token = current;
+
+		cancelRefresh();
+		scheduleRefresh(current);
+	}
+
+	/**
+	 * If background renewal is enabled and anyone is using this manager, schedule the renewal of the given token.
+	 * Must hold the lock.
+	 * 
+	 * @param current the current token
+	 */
+	private void scheduleRefresh(OAuth2AccessToken current) {
+		if (users == 0 || current == null || refreshFraction <= 0 || current.getExpiration() == null) {
+			return;
+		}
+
+		long lifetime = current.getExpiration().getTime() - System.currentTimeMillis();
+		long delay = (long) (lifetime * refreshFraction * (1 - refreshJitter * Math.random()));
+		if (delay > 0) {
+			scheduledRefresh = REFRESHER.schedule(new Runnable() {
+				public void run() {
+					refreshInBackground();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Cancel the scheduled background renewal, if any. Must hold the lock.
+	 */
+	private void cancelRefresh() {
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+			scheduledRefresh = null;
+		}
+	}
+
+	/**
+	 * Renew the still-valid token. Requests keep using the current token until the new one is published. On failure
+	 * nothing changes, and the token will be renewed on demand once it expires.
+	 */
+	private void refreshInBackground() {
+		synchronized (lock) {
+			OAuth2AccessToken current = token;
+			if (users == 0 || current == null) {
+				return;
+			}
+
+			try {
+				setToken(renewAccessToken(current));
+			}
+			catch (RuntimeException e) {
+				log.warn("Background token renewal failed; the token will be renewed when it expires", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the grant type used to obtain tokens, as determined by which credentials were supplied
+	 */
+	public UaaTokenGrantType getGrantType() {
+		return grantType;
+	}
+
+	/**
+	 * @return a snapshot of how many times the token endpoint has been called, and for what
+	 */
+	public UaaTokenStatistics getStatistics() {
+		return new UaaTokenStatistics(obtainCount.get(), refreshCount.get(), refreshFailureCount.get());
+	}
+
+	/**
+	 * Replace the current token. Only password grants come with a refresh token, so every other grant simply obtains
+	 * a new token; a password grant whose refresh is rejected (for example because the refresh token has expired)
+	 * falls back to doing the same.
+	 * 
+	 * @param current the token to replace
+	 * @return the new token
+	 */
+	private OAuth2AccessToken renewAccessToken(OAuth2AccessToken current) {
+		Assert.notNull(current);
+
+		if (grantType == UaaTokenGrantType.password && current.getRefreshToken() != null) {
+			try {
+				OAuth2AccessToken refreshed = CHAIN.refreshAccessToken(details, current.getRefreshToken(),
+						new DefaultAccessTokenRequest());
+				refreshCount.incrementAndGet();
+				return refreshed;
+			}
+			catch (RuntimeException e) {
+				refreshFailureCount.incrementAndGet();
+				log.debug("Token refresh failed, obtaining a new token instead", e);
+			}
+		}
+
+		return obtainAccessToken();
+	}
+
+	/**
+	 * @return a brand new token for the configured credentials
+	 */
+	private OAuth2AccessToken obtainAccessToken() {
+		OAuth2AccessToken obtained = CHAIN.obtainAccessToken(details, new DefaultAccessTokenRequest());
+		obtainCount.incrementAndGet();
+		return obtained;
+	}
+
+	/**
+	 * Build the necessary details to get an access token for the correct token type (resource owner, client
+	 * credentials, or implicit, depending on how much information was provided)
+	 * 
+	 * @param url
+	 * @param creds
+	 * @return
+	 */
+	private OAuth2ProtectedResourceDetails getResourceDetails(URL url, UaaCredentials creds) {
+		Assert.notNull(url);
+		Assert.notNull(creds);
+		Assert.notNull(creds.getClientId());
+
+		OAuth2ProtectedResourceDetails details = null;
+		if (StringUtils.hasText(creds.getUserId()) && StringUtils.hasText(creds.getPassword())) {
+			ResourceOwnerPasswordResourceDetails tokenDetails = new ResourceOwnerPasswordResourceDetails();
+			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
+			tokenDetails.setUsername(creds.getUserId());
+			tokenDetails.setPassword(creds.getPassword());
+			tokenDetails.setClientId(creds.getClientId());
+			tokenDetails.setClientSecret(creds.getClientSecret());
+			tokenDetails.setAccessTokenUri(url + "/oauth/token");
+
+			details = tokenDetails;
+		}
+		else if (StringUtils.hasText(creds.getClientSecret())) {
+			ClientCredentialsResourceDetails tokenDetails = new ClientCredentialsResourceDetails();
+			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
+			tokenDetails.setClientId(creds.getClientId());
+			tokenDetails.setClientSecret(creds.getClientSecret());
+			tokenDetails.setAccessTokenUri(url + "/oauth/token");
+
+			details = tokenDetails;
+		}
+		else {
+			ImplicitResourceDetails tokenDetails = new ImplicitResourceDetails();
+			tokenDetails.setClientAuthenticationScheme(AuthenticationScheme.header);
+			tokenDetails.setClientId(creds.getClientId());
+			tokenDetails.setAccessTokenUri(url + "/oauth/token");
+
+			details = tokenDetails;
+		}
+
+		return details;
+	}
+
+	private static UaaTokenGrantType getGrantType(OAuth2ProtectedResourceDetails details) {
+		if (details instanceof ResourceOwnerPasswordResourceDetails) {
+			return UaaTokenGrantType.password;
+		}
+		else if (details instanceof ClientCredentialsResourceDetails) {
+			return UaaTokenGrantType.client_credentials;
+		}
+		else {
+			return UaaTokenGrantType.implicit;
+		}
+	}
+}
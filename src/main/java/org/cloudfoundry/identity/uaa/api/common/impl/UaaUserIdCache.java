@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, expiring map of user names to user IDs. Names known not to exist are remembered too, for a shorter time,
+ * so that repeated lookups of a missing user do not each go to the server. When full, the least recently used entry is
+ * dropped.
+ */
+class UaaUserIdCache {
+	private final int maxSize;
+
+	private final long ttl;
+
+	private final long negativeTtl;
+
+	private final Map<String, CachedId> entries;
+
+	/**
+	 * @param maxSize the maximum number of user names to remember. If &lt;= 0, nothing is cached
+	 * @param ttl how long to remember the ID of a user, in milliseconds
+	 * @param negativeTtl how long to remember that a user does not exist, in milliseconds. If &lt;= 0, missing users
+	 * are not remembered
+	 */
+	UaaUserIdCache(final int maxSize, long ttl, long negativeTtl) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.entries = new LinkedHashMap<String, CachedId>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedId> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param userName the user name
+	 * @return the cached entry, or null if the user name is not cached or its entry has expired
+	 */
+	synchronized CachedId get(String userName) {
+		CachedId entry = entries.get(userName);
+		if (entry != null && entry.expires <= System.currentTimeMillis()) {
+			entries.remove(userName);
+			return null;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * @param userName the user name
+	 * @param userId the ID of the user, or null if the user does not exist
+	 */
+	synchronized void put(String userName, String userId) {
+		long lifetime = userId == null ? negativeTtl : ttl;
+		if (maxSize <= 0 || lifetime <= 0 || userName == null) {
+			return;
+		}
+
+		entries.put(userName, new CachedId(userId, System.currentTimeMillis() + lifetime));
+	}
+
+	/**
+	 * Forget every user name that maps to the given ID
+	 * 
+	 * @param userId the user ID
+	 */
+	synchronized void removeId(String userId) {
+		for (Iterator<CachedId> i = entries.values().iterator(); i.hasNext();) {
+			if (userId.equals(i.next().id)) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * A cached lookup result
+	 */
+	static class CachedId {
+		private final String id;
+
+		private final long expires;
+
+		CachedId(String id, long expires) {
+			this.id = id;
+			this.expires = expires;
+		}
+
+		/**
+		 * @return the user ID, or null if the user is known not to exist
+		 */
+		String getId() {
+			return id;
+		}
+	}
+}
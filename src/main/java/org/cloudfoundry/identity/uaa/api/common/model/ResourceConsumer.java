@@ -0,0 +1,28 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.model;
+
+/**
+ * Receives the resources returned by a query one at a time, as they arrive, instead of as a collection
+ * 
+ * @param <T> the type of resource
+ */
+public interface ResourceConsumer<T> {
+	/**
+	 * @param resource the next resource
+	 */
+	public void accept(T resource);
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.model;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Tuning options for the HTTP transport shared by all API calls made through a single connection. The defaults are
+ * suitable for most applications; all timeouts are in milliseconds.
+ */
+public class UaaConnectionSettings {
+	private int maxConnectionsTotal = 20;
+
+	private int maxConnectionsPerRoute = 10;
+
+	private int connectTimeout = 5000;
+
+	private int readTimeout = 30000;
+
+	private int idleConnectionTimeout = 30000;
+
+	private int maxRequestsInFlight = 100;
+
+	private double tokenRefreshFraction = 0;
+
+	private double tokenRefreshJitter = 0.1;
+
+	private int userIdCacheSize = 1000;
+
+	private long userIdCacheTtl = 300000;
+
+	private long userIdNegativeCacheTtl = 30000;
+
+	private int maxFilterUrlLength = 4096;
+
+	private int maxConflictRetries = 3;
+
+	private long conflictRetryBackoff = 50;
+
+	private Executor lookupExecutor;
+
+	private int pageSize = 100;
+
+	private int pagePrefetchDepth = 1;
+
+	private int scimObjectCacheSize = 0;
+
+	/**
+	 * @return The maximum number of pooled connections, across all routes. Defaults to 20.
+	 */
+	public int getMaxConnectionsTotal() {
+		return maxConnectionsTotal;
+	}
+
+	/**
+	 * @param maxConnectionsTotal The maximum number of pooled connections, across all routes
+	 */
+	public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+		this.maxConnectionsTotal = maxConnectionsTotal;
+	}
+
+	/**
+	 * @return The maximum number of pooled connections to a single host. Defaults to 10.
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute The maximum number of pooled connections to a single host
+	 */
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @return The time to wait for a connection to be established. Defaults to 5 seconds.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout The time to wait for a connection to be established. If &lt;= 0, wait indefinitely
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return The time to wait for data on an established connection. Defaults to 30 seconds.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @param readTimeout The time to wait for data on an established connection. If &lt;= 0, wait indefinitely
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @return How long a pooled connection may sit idle before it is closed. Defaults to 30 seconds.
+	 */
+	public int getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * @param idleConnectionTimeout How long a pooled connection may sit idle before it is closed. If &lt;= 0, idle
+	 * connections are never evicted
+	 */
+	public void setIdleConnectionTimeout(int idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/**
+	 * @return The maximum number of asynchronous requests that may be outstanding at once. Requests beyond this limit
+	 * are queued, without blocking the caller, until an earlier request completes. Defaults to 100.
+	 */
+	public int getMaxRequestsInFlight() {
+		return maxRequestsInFlight;
+	}
+
+	/**
+	 * @param maxRequestsInFlight The maximum number of asynchronous requests that may be outstanding at once
+	 */
+	public void setMaxRequestsInFlight(int maxRequestsInFlight) {
+		this.maxRequestsInFlight = maxRequestsInFlight;
+	}
+
+	/**
+	 * @return The fraction of an access token's lifetime after which it is renewed in the background, or 0 (the
+	 * default) if tokens are only renewed when a request finds them expired
+	 */
+	public double getTokenRefreshFraction() {
+		return tokenRefreshFraction;
+	}
+
+	/**
+	 * @param tokenRefreshFraction The fraction of an access token's lifetime after which it is renewed in the
+	 * background; for example 0.75 renews a one-hour token after 45 minutes. Must be less than 1. If &lt;= 0,
+	 * background renewal is disabled
+	 */
+	public void setTokenRefreshFraction(double tokenRefreshFraction) {
+		this.tokenRefreshFraction = tokenRefreshFraction;
+	}
+
+	/**
+	 * @return The largest fraction by which a background renewal is randomly brought forward. Defaults to 0.1
+	 */
+	public double getTokenRefreshJitter() {
+		return tokenRefreshJitter;
+	}
+
+	/**
+	 * @param tokenRefreshJitter The largest fraction by which a background renewal is randomly brought forward, so
+	 * that many clients started together do not all renew at the same moment. Must be between 0 and 1
+	 */
+	public void setTokenRefreshJitter(double tokenRefreshJitter) {
+		this.tokenRefreshJitter = tokenRefreshJitter;
+	}
+
+	/**
+	 * @return The maximum number of user name to ID lookups remembered by the connection. Defaults to 1000.
+	 */
+	public int getUserIdCacheSize() {
+		return userIdCacheSize;
+	}
+
+	/**
+	 * @param userIdCacheSize The maximum number of user name to ID lookups remembered by the connection. If &lt;= 0,
+	 * every lookup goes to the server
+	 */
+	public void setUserIdCacheSize(int userIdCacheSize) {
+		this.userIdCacheSize = userIdCacheSize;
+	}
+
+	/**
+	 * @return How long the ID of a user is remembered. Defaults to 5 minutes.
+	 */
+	public long getUserIdCacheTtl() {
+		return userIdCacheTtl;
+	}
+
+	/**
+	 * @param userIdCacheTtl How long the ID of a user is remembered. Changes made through other clients may go unseen
+	 * for this long. If &lt;= 0, user IDs are not remembered
+	 */
+	public void setUserIdCacheTtl(long userIdCacheTtl) {
+		this.userIdCacheTtl = userIdCacheTtl;
+	}
+
+	/**
+	 * @return How long it is remembered that a user name does not exist. Defaults to 30 seconds.
+	 */
+	public long getUserIdNegativeCacheTtl() {
+		return userIdNegativeCacheTtl;
+	}
+
+	/**
+	 * @param userIdNegativeCacheTtl How long it is remembered that a user name does not exist. If &lt;= 0, missing
+	 * users are looked up again every time
+	 */
+	public void setUserIdNegativeCacheTtl(long userIdNegativeCacheTtl) {
+		this.userIdNegativeCacheTtl = userIdNegativeCacheTtl;
+	}
+
+	/**
+	 * @return The longest URL, in characters, that a query generated on the caller's behalf may use. Defaults to 4096.
+	 */
+	public int getMaxFilterUrlLength() {
+		return maxFilterUrlLength;
+	}
+
+	/**
+	 * @param maxFilterUrlLength The longest URL, in characters, that a query generated on the caller's behalf may
+	 * use. Lookups of many items at once are split into as many queries as needed to stay within this limit; it
+	 * should be comfortably below the limit enforced by the server and any proxies in front of it
+	 */
+	public void setMaxFilterUrlLength(int maxFilterUrlLength) {
+		this.maxFilterUrlLength = maxFilterUrlLength;
+	}
+
+	/**
+	 * @return How many times a read-modify-write update is retried after a concurrent change by another client.
+	 * Defaults to 3.
+	 */
+	public int getMaxConflictRetries() {
+		return maxConflictRetries;
+	}
+
+	/**
+	 * @param maxConflictRetries How many times a read-modify-write update is retried after a concurrent change by
+	 * another client. If &lt;= 0, the version conflict is reported to the caller straight away
+	 */
+	public void setMaxConflictRetries(int maxConflictRetries) {
+		this.maxConflictRetries = maxConflictRetries;
+	}
+
+	/**
+	 * @return The delay before the first retry of a conflicting update. Defaults to 50 milliseconds.
+	 */
+	public long getConflictRetryBackoff() {
+		return conflictRetryBackoff;
+	}
+
+	/**
+	 * @param conflictRetryBackoff The delay before the first retry of a conflicting update. Each further retry waits
+	 * twice as long as the one before, and every delay is randomly shortened by up to half so that competing clients
+	 * drift apart
+	 */
+	public void setConflictRetryBackoff(long conflictRetryBackoff) {
+		this.conflictRetryBackoff = conflictRetryBackoff;
+	}
+
+	/**
+	 * @return The executor that runs the independent lookups of blocking composite operations, or null (the default)
+	 * to give each connection its own pool of daemon threads, bounded by {@link #getMaxConnectionsPerRoute()}, that
+	 * runs lookups on the calling thread when it is full
+	 */
+	public Executor getLookupExecutor() {
+		return lookupExecutor;
+	}
+
+	/**
+	 * @param lookupExecutor The executor that runs the independent lookups of blocking composite operations (such as
+	 * reading a group while its new members' IDs are resolved), so that they overlap instead of running one after the
+	 * other, and reads pages ahead during iteration. If it rejects a task, the task runs on the calling thread instead
+	 */
+	public void setLookupExecutor(Executor lookupExecutor) {
+		this.lookupExecutor = lookupExecutor;
+	}
+
+	/**
+	 * @return The number of results fetched per request when iterating over every result of a query. Defaults to 100.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize The number of results fetched per request when iterating over every result of a query, unless
+	 * the query sets its own count. Larger pages mean fewer requests but more memory per page
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return The number of pages read ahead in the background while iterating over every result of a query.
+	 * Defaults to 1.
+	 */
+	public int getPagePrefetchDepth() {
+		return pagePrefetchDepth;
+	}
+
+	/**
+	 * @param pagePrefetchDepth The number of pages read ahead in the background while iterating over every result of
+	 * a query, so that the next page is already on its way while the current one is processed. Read-ahead pages are
+	 * held in memory until they are reached. If &lt;= 0, each page is fetched only when the iteration reaches it
+	 */
+	public void setPagePrefetchDepth(int pagePrefetchDepth) {
+		this.pagePrefetchDepth = pagePrefetchDepth;
+	}
+
+	/**
+	 * @return The maximum number of users and groups read by ID that are remembered by the connection. Defaults to 0.
+	 */
+	public int getScimObjectCacheSize() {
+		return scimObjectCacheSize;
+	}
+
+	/**
+	 * @param scimObjectCacheSize The maximum number of users and groups read by ID that are remembered by the
+	 * connection. A remembered object is still checked with the server each time it is read, using its version as the
+	 * <code>If-None-Match</code> header, but is only downloaded again if it has changed. Each entry holds the whole
+	 * object, members included. If &lt;= 0, nothing is remembered
+	 */
+	public void setScimObjectCacheSize(int scimObjectCacheSize) {
+		this.scimObjectCacheSize = scimObjectCacheSize;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof UaaConnectionSettings)) {
+			return false;
+		}
+
+		UaaConnectionSettings other = (UaaConnectionSettings) o;
+
+		return maxConnectionsTotal == other.maxConnectionsTotal
+				&& maxConnectionsPerRoute == other.maxConnectionsPerRoute
+				&& connectTimeout == other.connectTimeout
+				&& readTimeout == other.readTimeout
+				&& idleConnectionTimeout == other.idleConnectionTimeout
+				&& maxRequestsInFlight == other.maxRequestsInFlight
+				&& Double.compare(tokenRefreshFraction, other.tokenRefreshFraction) == 0
+				&& Double.compare(tokenRefreshJitter, other.tokenRefreshJitter) == 0
+				&& userIdCacheSize == other.userIdCacheSize
+				&& userIdCacheTtl == other.userIdCacheTtl
+				&& userIdNegativeCacheTtl == other.userIdNegativeCacheTtl
+				&& maxFilterUrlLength == other.maxFilterUrlLength
+				&& maxConflictRetries == other.maxConflictRetries
+				&& conflictRetryBackoff == other.conflictRetryBackoff
+				&& ObjectUtils.nullSafeEquals(lookupExecutor, other.lookupExecutor)
+				&& pageSize == other.pageSize
+				&& pagePrefetchDepth == other.pagePrefetchDepth
+				&& scimObjectCacheSize == other.scimObjectCacheSize;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = maxConnectionsTotal;
+		result = 31 * result + maxConnectionsPerRoute;
+		result = 31 * result + connectTimeout;
+		result = 31 * result + readTimeout;
+		result = 31 * result + idleConnectionTimeout;
+		result = 31 * result + maxRequestsInFlight;
+		result = 31 * result + Double.valueOf(tokenRefreshFraction).hashCode();
+		result = 31 * result + Double.valueOf(tokenRefreshJitter).hashCode();
+		result = 31 * result + userIdCacheSize;
+		result = 31 * result + Long.valueOf(userIdCacheTtl).hashCode();
+		result = 31 * result + Long.valueOf(userIdNegativeCacheTtl).hashCode();
+		result = 31 * result + maxFilterUrlLength;
+		result = 31 * result + maxConflictRetries;
+		result = 31 * result + Long.valueOf(conflictRetryBackoff).hashCode();
+		result = 31 * result + ObjectUtils.nullSafeHashCode(lookupExecutor);
+		result = 31 * result + pageSize;
+		result = 31 * result + pagePrefetchDepth;
+		result = 31 * result + scimObjectCacheSize;
+		return result;
+	}
+}
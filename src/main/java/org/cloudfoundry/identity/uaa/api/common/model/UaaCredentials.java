@@ -16,6 +16,7 @@
 package org.cloudfoundry.identity.uaa.api.common.model;
 
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 
 /**
  * The OAuth2 client (and potentially user) credentials
@@ -95,4 +96,27 @@ public class UaaCredentials {
 	public String getPassword() {
 		return password;
 	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof UaaCredentials)) {
+			return false;
+		}
+
+		UaaCredentials other = (UaaCredentials) o;
+
+		return ObjectUtils.nullSafeEquals(clientId, other.clientId)
+				&& ObjectUtils.nullSafeEquals(clientSecret, other.clientSecret)
+				&& ObjectUtils.nullSafeEquals(userId, other.userId)
+				&& ObjectUtils.nullSafeEquals(password, other.password);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = ObjectUtils.nullSafeHashCode(clientId);
+		result = 31 * result + ObjectUtils.nullSafeHashCode(clientSecret);
+		result = 31 * result + ObjectUtils.nullSafeHashCode(userId);
+		result = 31 * result + ObjectUtils.nullSafeHashCode(password);
+		return result;
+	}
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.model;
+
+/**
+ * A snapshot of how often a connection has called the OAuth token endpoint
+ */
+public class UaaTokenStatistics {
+	private final long obtained;
+
+	private final long refreshed;
+
+	private final long failedRefreshes;
+
+	public UaaTokenStatistics(long obtained, long refreshed, long failedRefreshes) {
+		this.obtained = obtained;
+		this.refreshed = refreshed;
+		this.failedRefreshes = failedRefreshes;
+	}
+
+	/**
+	 * @return The number of brand new tokens obtained with the connection's credentials
+	 */
+	public long getObtained() {
+		return obtained;
+	}
+
+	/**
+	 * @return The number of tokens renewed with a refresh token
+	 */
+	public long getRefreshed() {
+		return refreshed;
+	}
+
+	/**
+	 * @return The number of refresh attempts the server rejected. Each is followed by obtaining a new token
+	 */
+	public long getFailedRefreshes() {
+		return failedRefreshes;
+	}
+
+	@Override
+	public String toString() {
+		return "obtained=" + obtained + ", refreshed=" + refreshed + ", failedRefreshes=" + failedRefreshes;
+	}
+}
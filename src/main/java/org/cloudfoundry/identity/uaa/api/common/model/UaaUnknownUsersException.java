@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Thrown when an operation is given the usernames of users that do not exist. The operation is refused as a whole,
+ * rather than carried out for the users that do exist.
+ */
+public class UaaUnknownUsersException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	private final List<String> userNames;
+
+	/**
+	 * @param userNames the usernames that do not exist
+	 */
+	public UaaUnknownUsersException(Collection<String> userNames) {
+		super("No such users: " + StringUtils.collectionToDelimitedString(userNames, ", "));
+		this.userNames = Collections.unmodifiableList(new ArrayList<String>(userNames));
+	}
+
+	/**
+	 * @return The usernames that do not exist
+	 */
+	public List<String> getUserNames() {
+		return userNames;
+	}
+}
@@ -15,6 +15,7 @@
  */
 package org.cloudfoundry.identity.uaa.api.common.model.expr;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -32,15 +33,25 @@ public class FilterRequest {
 
 	private int count;
 
+	private String sortBy;
+
+	private SortOrder sortOrder;
+
 	public FilterRequest() {
 
 	}
 
 	FilterRequest(String filter, List<String> attributes, int start, int count) {
+		this(filter, attributes, start, count, null, null);
+	}
+
+	FilterRequest(String filter, List<String> attributes, int start, int count, String sortBy, SortOrder sortOrder) {
 		this.filter = filter;
 		this.attributes = attributes;
 		this.start = start;
 		this.count = count;
+		this.sortBy = sortBy;
+		this.sortOrder = sortOrder;
 	}
 
 	/**
@@ -73,5 +84,69 @@ public class FilterRequest {
 		return attributes;
 	}
 
+	/**
+	 * @return The attribute to sort the results by, or null to leave the order up to UAA
+	 */
+	public String getSortBy() {
+		return sortBy;
+	}
+
+	/**
+	 * @return The order to sort the results in, or null for UAA's default (ascending)
+	 */
+	public SortOrder getSortOrder() {
+		return sortOrder;
+	}
+
+	/**
+	 * Copy this request for a different page of results
+	 * 
+	 * @param start the 1-based starting index of the page
+	 * @param count the page size
+	 * @return a request with the same filter and attributes as this one, for the given page
+	 */
+	public FilterRequest withPage(int start, int count) {
+		return new FilterRequest(filter, attributes, start, count, sortBy, sortOrder);
+	}
+
+	/**
+	 * Copy this request, asking for different attributes
+	 * 
+	 * @param attributes the attributes to be returned. If none, all attributes are returned
+	 * @return a request with the same filter, page and sort order as this one, returning the given attributes
+	 */
+	public FilterRequest withAttributes(String... attributes) {
+		List<String> selected = attributes == null || attributes.length == 0 ? null : Arrays.asList(attributes);
+		return new FilterRequest(filter, selected, start, count, sortBy, sortOrder);
+	}
+
+	/**
+	 * Copy this request, narrowing it to the results whose attribute is greater than the given value
+	 * 
+	 * @param attribute the attribute to compare
+	 * @param value the value to compare against, quoted like the values given to {@link FilterRequestBuilder}
+	 * @return a request that matches what this one does, and only where <code>attribute gt value</code>
+	 */
+	public FilterRequest after(String attribute, Object value) {
+		StringBuilder after = new StringBuilder();
+		if (filter != null && filter.length() > 0) {
+			after.append('(').append(filter).append(") and ");
+		}
+
+		after.append(new GreaterThanOperation(attribute, value));
+		return new FilterRequest(after.toString(), attributes, start, count, sortBy, sortOrder);
+	}
+
+	/**
+	 * Copy this request with a different sort order
+	 * 
+	 * @param sortBy the attribute to sort the results by
+	 * @param sortOrder the order to sort them in
+	 * @return a request with the same filter, attributes and page as this one, sorted as given
+	 */
+	public FilterRequest withSort(String sortBy, SortOrder sortOrder) {
+		return new FilterRequest(filter, attributes, start, count, sortBy, sortOrder);
+	}
+
 	static final FilterRequest SHOW_ALL = new FilterRequest(null, null, 0, 0);
 }
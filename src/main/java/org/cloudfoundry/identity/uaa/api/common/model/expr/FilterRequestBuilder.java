@@ -56,6 +56,10 @@ public class FilterRequestBuilder {
 
 	private int count = 0;
 
+	private String sortBy = null;
+
+	private SortOrder sortOrder = null;
+
 	private boolean built = false;
 
 	/**
@@ -282,6 +286,31 @@ public class FilterRequestBuilder {
 		return this;
 	}
 
+	/**
+	 * Sort the results by the given attribute, in ascending order
+	 * @param attribute The attribute to sort by
+	 * @return The builder object (for chaining)
+	 * @throws IllegalStateException if {@link #build()} has already been called
+	 */
+	public FilterRequestBuilder sortBy(String attribute) {
+		return sortBy(attribute, SortOrder.ASCENDING);
+	}
+
+	/**
+	 * Sort the results by the given attribute. Combined with {@link #count(int)}, this fetches just the first few
+	 * results in that order; for example, the most recently modified.
+	 * @param attribute The attribute to sort by
+	 * @param order The order to sort in
+	 * @return The builder object (for chaining)
+	 * @throws IllegalStateException if {@link #build()} has already been called
+	 */
+	public FilterRequestBuilder sortBy(String attribute, SortOrder order) {
+		verifyActive();
+		this.sortBy = attribute;
+		this.sortOrder = order;
+		return this;
+	}
+
 	/**
 	 * A convenience method to return a {@link FilterRequest} that allows all items to be returned
 	 * @return a {@link FilterRequest}
@@ -303,7 +332,7 @@ public class FilterRequestBuilder {
 		Operation filter = joinAll();
 		built = true;
 
-		return new FilterRequest(filter.toString(), attributes, start, count);
+		return new FilterRequest(filter.toString(), attributes, start, count, sortBy, sortOrder);
 	}
 
 	private Operation joinAll() {
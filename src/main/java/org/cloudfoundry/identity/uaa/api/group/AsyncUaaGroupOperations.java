@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.group;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaUnknownUsersException;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMapping;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingIdentifier;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRef;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * The non-blocking counterpart of {@link UaaGroupOperations}. Failures are reported through the returned future rather
+ * than thrown.
+ */
+public interface AsyncUaaGroupOperations {
+	/**
+	 * @param group The partial group to be created
+	 * @return The newly created group
+	 * @see UaaGroupOperations#createGroup(UaaGroup)
+	 */
+	public ListenableFuture<UaaGroup> createGroup(UaaGroup group);
+
+	/**
+	 * @param groupId the ID of the group
+	 * @param newName the new display name
+	 * @return the group with the specified group ID and the new Name
+	 * @see UaaGroupOperations#updateGroupName(String, String)
+	 */
+	public ListenableFuture<UaaGroup> updateGroupName(String groupId, String newName);
+
+	/**
+	 * The group and the member's ID are looked up concurrently before the group is updated.
+	 * 
+	 * @param groupId the group id
+	 * @param memberName the member's username (will be converted to ID)
+	 * @return the group with the member in it. Fails with {@link UaaUnknownUsersException} if there is no user with
+	 * that username
+	 * @see UaaGroupOperations#addMember(String, String)
+	 */
+	public ListenableFuture<UaaGroup> addMember(String groupId, String memberName);
+
+	/**
+	 * The group and the member's ID are looked up concurrently before the group is updated.
+	 * 
+	 * @param groupId the group id
+	 * @param memberName the member's username (will be converted to ID)
+	 * @return the group without the member in it. Fails with {@link UaaUnknownUsersException} if there is no user
+	 * with that username
+	 * @see UaaGroupOperations#deleteMember(String, String)
+	 */
+	public ListenableFuture<UaaGroup> deleteMember(String groupId, String memberName);
+
+	/**
+	 * The group and the members' IDs are looked up concurrently before the group is updated.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the members' usernames
+	 * @return the group with the members in it. Fails with {@link UaaUnknownUsersException} if any of the usernames
+	 * does not exist
+	 * @see UaaGroupOperations#addMembers(String, Collection)
+	 */
+	public ListenableFuture<UaaGroup> addMembers(String groupId, Collection<String> memberNames);
+
+	/**
+	 * The group and the members' IDs are looked up concurrently before the group is updated.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the members' usernames
+	 * @return the group without the members in it. Fails with {@link UaaUnknownUsersException} if any of the
+	 * usernames does not exist
+	 * @see UaaGroupOperations#removeMembers(String, Collection)
+	 */
+	public ListenableFuture<UaaGroup> removeMembers(String groupId, Collection<String> memberNames);
+
+	/**
+	 * The group and the members' IDs are looked up concurrently before the group is compared and, if necessary,
+	 * updated.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the usernames of every user that should be a member
+	 * @return the group with exactly those users in it. Fails with {@link UaaUnknownUsersException} if any of the
+	 * usernames does not exist
+	 * @see UaaGroupOperations#setMembers(String, Set)
+	 */
+	public ListenableFuture<UaaGroup> setMembers(String groupId, Set<String> memberNames);
+
+	/**
+	 * @param groupId the group ID
+	 * @return a future that completes when the group has been deleted
+	 * @see UaaGroupOperations#deleteGroup(String)
+	 */
+	public ListenableFuture<Void> deleteGroup(String groupId);
+
+	/**
+	 * @param request the {@link FilterRequest}
+	 * @return The page of groups.
+	 * @see UaaGroupOperations#getGroups(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaGroup>> getGroups(FilterRequest request);
+
+	/**
+	 * @param groupId the group ID
+	 * @return the group, or null if it does not exist
+	 * @see UaaGroupOperations#getGroupById(String)
+	 */
+	public ListenableFuture<UaaGroup> getGroupById(String groupId);
+
+	/**
+	 * @param groupId the group ID
+	 * @param current the copy of the group already held, or null if there is none
+	 * @return the group, <code>current</code> if it has not changed, or null if it does not exist
+	 * @see UaaGroupOperations#getGroupById(String, UaaGroup)
+	 */
+	public ListenableFuture<UaaGroup> getGroupById(String groupId, UaaGroup current);
+
+	/**
+	 * @param request the {@link FilterRequest}
+	 * @return The page of group IDs and display names.
+	 * @see UaaGroupOperations#getGroupRefs(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaGroupRef>> getGroupRefs(FilterRequest request);
+
+	/**
+	 * @param type mapping the local group by displayName or id
+	 * @param identifier the identifier specified by <code>type</code>
+	 * @param externalGroupDn the DN of the LDAP group
+	 * @return the new mapping
+	 * @see UaaGroupOperations#createGroupMapping(UaaGroupMappingIdentifier, String, String)
+	 */
+	public ListenableFuture<UaaGroupMapping> createGroupMapping(UaaGroupMappingIdentifier type, String identifier,
+			String externalGroupDn);
+
+	/**
+	 * @param mapping the mapping to delete
+	 * @return a future that completes when the mapping has been deleted
+	 * @see UaaGroupOperations#deleteGroupMapping(UaaGroupMapping)
+	 */
+	public ListenableFuture<Void> deleteGroupMapping(UaaGroupMapping mapping);
+
+	/**
+	 * @param request the filter
+	 * @return the list of group mappings
+	 * @see UaaGroupOperations#getGroupMappings(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaGroupMapping>> getGroupMappings(FilterRequest request);
+}
@@ -15,16 +15,26 @@
  */
 package org.cloudfoundry.identity.uaa.api.group;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaUnknownUsersException;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMapping;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingIdentifier;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRef;
 
 /**
  * Provides endpoints to the UAA group APIs specified <a
  * href="https://github.com/cloudfoundry/uaa/blob/master/docs/UAA-APIs.rst#group-management-apis">here</a>
  * 
+ * Changes to a group's name or members read the group, change it and write it back. If another client updates the
+ * group in between, the change is re-applied to a fresh copy of the group and written again.
+ * 
  * @author Josh Ghiloni
  *
  */
@@ -53,6 +63,7 @@ public interface UaaGroupOperations {
 	 * @param groupId the group id
 	 * @param memberName the member's username (will be converted to ID)
 	 * @return the group with the member in it
+	 * @throws UaaUnknownUsersException if there is no user with that username. The group is not changed
 	 * @see org.cloudfoundry.identity.uaa.api.user.model.UaaUser#getUserName()
 	 * @see org.cloudfoundry.identity.uaa.api.user.UaaUserOperations#getUserByName(String)
 	 */
@@ -64,11 +75,50 @@ public interface UaaGroupOperations {
 	 * @param groupId the group id
 	 * @param memberName the member's username (will be converted to ID)
 	 * @return the group without the member in it
+	 * @throws UaaUnknownUsersException if there is no user with that username. The group is not changed
 	 * @see org.cloudfoundry.identity.uaa.api.user.model.UaaUser#getUserName()
 	 * @see org.cloudfoundry.identity.uaa.api.user.UaaUserOperations#getUserByName(String)
 	 */
 	public UaaGroup deleteMember(String groupId, String memberName);
 
+	/**
+	 * Add many members to the group at once. The usernames are converted to IDs in bulk and the group is updated with
+	 * a single request, or not at all if they all already are members.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the members' usernames
+	 * @return the group with the members in it
+	 * @throws UaaUnknownUsersException if any of the usernames does not exist. The group is not changed
+	 * @see org.cloudfoundry.identity.uaa.api.user.UaaUserOperations#resolveUserIds(Collection)
+	 */
+	public UaaGroup addMembers(String groupId, Collection<String> memberNames);
+
+	/**
+	 * Remove many members from the group at once. The usernames are converted to IDs in bulk and the group is updated
+	 * with a single request, or not at all if none of them are members.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the members' usernames
+	 * @return the group without the members in it
+	 * @throws UaaUnknownUsersException if any of the usernames does not exist. The group is not changed
+	 * @see org.cloudfoundry.identity.uaa.api.user.UaaUserOperations#resolveUserIds(Collection)
+	 */
+	public UaaGroup removeMembers(String groupId, Collection<String> memberNames);
+
+	/**
+	 * Make the given users the group's only user members. The current members are read once and compared with the
+	 * desired ones, and the group is only updated if they differ. Members that are not users, such as nested groups,
+	 * are left alone.
+	 * 
+	 * @param groupId the group id
+	 * @param memberNames the usernames of every user that should be a member
+	 * @return the group with exactly those users in it
+	 * @throws UaaUnknownUsersException if any of the usernames does not exist. The group is not changed, since
+	 * leaving those users out would remove them if they are members
+	 * @see org.cloudfoundry.identity.uaa.api.user.UaaUserOperations#resolveUserIds(Collection)
+	 */
+	public UaaGroup setMembers(String groupId, Set<String> memberNames);
+
 	/**
 	 * Delete the group from the database. An exception will be thrown if the operation fails
 	 * 
@@ -76,6 +126,25 @@ public interface UaaGroupOperations {
 	 */
 	public void deleteGroup(String groupId);
 
+	/**
+	 * Read a group by its ID. This reads the group's own resource rather than searching for it.
+	 * 
+	 * @param groupId the group ID
+	 * @return the group, or null if it does not exist
+	 */
+	public UaaGroup getGroupById(String groupId);
+
+	/**
+	 * Read a group by its ID, unless the copy already held is up to date. The copy's version is sent as the
+	 * <code>If-None-Match</code> header, and if the group has not changed since, the server does not send it again.
+	 * 
+	 * @param groupId the group ID
+	 * @param current the copy of the group already held, or null if there is none
+	 * @return the group, <code>current</code> if it has not changed, or null if it does not exist
+	 * @see #getGroupById(String)
+	 */
+	public UaaGroup getGroupById(String groupId, UaaGroup current);
+
 	/**
 	 * Get a page of groups based on the given {@link FilterRequest}
 	 * 
@@ -85,6 +154,92 @@ public interface UaaGroupOperations {
 	 */
 	public PagedResult<UaaGroup> getGroups(FilterRequest request);
 
+	/**
+	 * Get a page of groups based on the given {@link FilterRequest}, handing each group to the consumer as soon as it
+	 * has been read instead of collecting them
+	 * 
+	 * @param request the {@link FilterRequest}
+	 * @param consumer receives the groups, on the calling thread
+	 * @return The paging information of the page. Its resources are null
+	 * @see #getGroups(FilterRequest)
+	 */
+	public PagedResult<UaaGroup> getGroups(FilterRequest request, ResourceConsumer<? super UaaGroup> consumer);
+
+	/**
+	 * Get a page of group IDs and display names based on the given {@link FilterRequest}. Only those two attributes
+	 * are requested, so the members of the groups are never sent.
+	 * 
+	 * @param request the {@link FilterRequest}. Its attributes are ignored
+	 * @return The page of groups.
+	 * @see #getGroups(FilterRequest)
+	 */
+	public PagedResult<UaaGroupRef> getGroupRefs(FilterRequest request);
+
+	/**
+	 * Count the groups matching the given {@link FilterRequest}, without downloading them
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return the number of matching groups
+	 */
+	public int countGroups(FilterRequest request);
+
+	/**
+	 * Check whether any group matches the given {@link FilterRequest}, without downloading it
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return true if at least one group matches
+	 * @see #countGroups(FilterRequest)
+	 */
+	public boolean exists(FilterRequest request);
+
+	/**
+	 * Iterate over every group matching the given {@link FilterRequest}. Groups are fetched a page at a time as the
+	 * iteration proceeds, and only the current page (plus any pages read ahead) is held in memory.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @return the groups
+	 * @see org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings#getPageSize()
+	 */
+	public Iterable<UaaGroup> iterateGroups(FilterRequest request);
+
+	/**
+	 * Iterate over every group matching the given {@link FilterRequest} in order of ID. Each page asks for the groups
+	 * after the last ID seen instead of skipping to a start index, so deep pages are as cheap for the server as the
+	 * first, and groups created or deleted during the iteration do not cause others to be skipped or repeated.
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index and sort order are ignored. If it sets a count, that
+	 * is the page size; otherwise the connection's page size is used
+	 * @return the groups
+	 * @see #iterateGroups(FilterRequest)
+	 */
+	public Iterable<UaaGroup> iterateGroupsById(FilterRequest request);
+
+	/**
+	 * Fetch all groups matching the given {@link FilterRequest}. After the first page, which gives the total number of
+	 * results, the remaining pages are fetched concurrently.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @return the groups, in the order the server returned them
+	 * @see #iterateGroups(FilterRequest)
+	 */
+	public List<UaaGroup> fetchAllGroups(FilterRequest request, int parallelism);
+
+	/**
+	 * Fetch all groups matching the given {@link FilterRequest}, fetching the pages after the first concurrently and
+	 * handing each group to the consumer as soon as it has been read, in no particular order. The consumer is never
+	 * called by two threads at once.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @param consumer receives the groups
+	 * @return the number of groups delivered
+	 */
+	public int fetchAllGroups(FilterRequest request, int parallelism, ResourceConsumer<? super UaaGroup> consumer);
+
 	/**
 	 * Create a mapping from an external LDAP group to an internal UAA group. Only effective when UAA is configured with
 	 * ldap/ldap-groups-map-to-scopes.xml (see <a
@@ -118,4 +273,52 @@ public interface UaaGroupOperations {
 	 * @see org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder
 	 */
 	public PagedResult<UaaGroupMapping> getGroupMappings(FilterRequest request);
+
+	/**
+	 * Get a page of group mappings based on the given {@link FilterRequest}, handing each mapping to the consumer as
+	 * soon as it has been read instead of collecting them
+	 * 
+	 * @param request the {@link FilterRequest}
+	 * @param consumer receives the group mappings, on the calling thread
+	 * @return The paging information of the page. Its resources are null
+	 * @see #getGroupMappings(FilterRequest)
+	 */
+	public PagedResult<UaaGroupMapping> getGroupMappings(FilterRequest request,
+			ResourceConsumer<? super UaaGroupMapping> consumer);
+
+	/**
+	 * Iterate over every group mapping matching the given filter, fetching a page at a time as the iteration proceeds
+	 * 
+	 * @param request the filter. If it sets a count, that is the page size; otherwise the connection's page size is
+	 * used
+	 * @return the group mappings
+	 * @see #getGroupMappings(FilterRequest)
+	 */
+	public Iterable<UaaGroupMapping> iterateGroupMappings(FilterRequest request);
+
+	/**
+	 * Fetch all group mappings matching the given {@link FilterRequest}. After the first page, which gives the total
+	 * number of results, the remaining pages are fetched concurrently.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @return the group mappings, in the order the server returned them
+	 * @see #iterateGroupMappings(FilterRequest)
+	 */
+	public List<UaaGroupMapping> fetchAllGroupMappings(FilterRequest request, int parallelism);
+
+	/**
+	 * Fetch all group mappings matching the given {@link FilterRequest}, fetching the pages after the first
+	 * concurrently and handing each mapping to the consumer as soon as it has been read, in no particular order. The
+	 * consumer is never called by two threads at once.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @param consumer receives the group mappings
+	 * @return the number of group mappings delivered
+	 */
+	public int fetchAllGroupMappings(FilterRequest request, int parallelism,
+			ResourceConsumer<? super UaaGroupMapping> consumer);
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.group.impl;
+
+import static org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject.SCHEMAS;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.Continuation;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaScimUpdate;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.group.AsyncUaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.impl.UaaGroupOperationsImpl.UaaModificationGroup;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMapping;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingIdentifier;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingsResults;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRef;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRefsResults;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupsResults;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * @see AsyncUaaGroupOperations
+ */
+public class AsyncUaaGroupOperationsImpl implements AsyncUaaGroupOperations {
+
+	private UaaConnectionHelper helper;
+
+	public AsyncUaaGroupOperationsImpl(UaaConnectionHelper helper) {
+		this.helper = helper;
+	}
+
+	public ListenableFuture<UaaGroup> createGroup(UaaGroup group) {
+		Assert.notNull(group);
+		Assert.hasText(group.getDisplayName());
+
+		group.setSchemas(SCHEMAS);
+
+		return helper.postAsync("/Groups", group, UaaGroup.class);
+	}
+
+	public ListenableFuture<Void> deleteGroup(String groupId) {
+		Assert.hasText(groupId);
+
+		return UaaFutures.discard(helper.deleteAsync("/Groups/{id}", Object.class, groupId));
+	}
+
+	public ListenableFuture<UaaGroup> getGroupById(String groupId) {
+		return getGroupById(groupId, null);
+	}
+
+	public ListenableFuture<UaaGroup> getGroupById(String groupId, UaaGroup current) {
+		Assert.hasText(groupId);
+
+		return helper.getScimObjectAsync("/Groups/{id}", UaaGroup.class, current, groupId);
+	}
+
+	public ListenableFuture<PagedResult<UaaGroup>> getGroups(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaGroup>> widen(getGroupsResults(request));
+	}
+
+	public ListenableFuture<PagedResult<UaaGroupRef>> getGroupRefs(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaGroupRef>> widen(helper.getAsync(helper.buildScimFilterUrl("/Groups",
+				request.withAttributes(UaaGroupOperationsImpl.REF_ATTRIBUTES)), UaaGroupRefsResults.class));
+	}
+
+	public ListenableFuture<UaaGroupMapping> createGroupMapping(UaaGroupMappingIdentifier type, String identifier,
+			String externalGroupDn) {
+		Assert.notNull(type);
+		Assert.hasText(identifier);
+		Assert.hasText(externalGroupDn);
+
+		Map<String, Object> request = new LinkedHashMap<String, Object>(3);
+
+		request.put("schemas", SCHEMAS);
+		request.put(type.jsonKey(), identifier);
+		request.put("externalGroup", externalGroupDn);
+
+		return helper.postAsync("/Groups/External", request, UaaGroupMapping.class);
+	}
+
+	public ListenableFuture<Void> deleteGroupMapping(UaaGroupMapping mapping) {
+		Assert.notNull(mapping);
+
+		String id = null;
+		UaaGroupMappingIdentifier type = null;
+		String external = mapping.getExternalGroup();
+
+		if (StringUtils.hasText(mapping.getGroupId())) {
+			id = mapping.getGroupId();
+			type = UaaGroupMappingIdentifier.GROUP_ID;
+		}
+		else {
+			id = mapping.getDisplayName();
+			type = UaaGroupMappingIdentifier.DISPLAY_NAME;
+		}
+
+		return UaaFutures.discard(helper.deleteAsync("/Groups/External/{type}/{id}/externalGroup/{externalGroup}",
+				String.class, type, id, external));
+	}
+
+	public ListenableFuture<PagedResult<UaaGroupMapping>> getGroupMappings(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaGroupMapping>> widen(helper.getAsync(
+				helper.buildScimFilterUrl("/Groups/External", request), UaaGroupMappingsResults.class));
+	}
+
+	public ListenableFuture<UaaGroup> updateGroupName(String groupId, String newName) {
+		return updateGroup(groupId, getGroupById(groupId), UaaGroupOperationsImpl.renaming(newName));
+	}
+
+	public ListenableFuture<UaaGroup> addMember(final String groupId, final String memberUserName) {
+		Assert.hasText(memberUserName);
+
+		ListenableFuture<List<Object>> lookups = UaaFutures.all(getGroupById(groupId),
+				helper.getUserIdByNameAsync(memberUserName));
+
+		return UaaFutures.then(lookups, new Continuation<List<Object>, UaaGroup>() {
+			public ListenableFuture<UaaGroup> apply(List<Object> results) {
+				UaaGroup group = (UaaGroup) results.get(0);
+				String memberId = UaaGroupOperationsImpl.requireUserId(memberUserName, (String) results.get(1));
+
+				return updateGroup(groupId, UaaFutures.immediate(group),
+						UaaGroupOperationsImpl.adding(Collections.singleton(memberId)));
+			}
+		});
+	}
+
+	public ListenableFuture<UaaGroup> deleteMember(final String groupId, final String memberUserName) {
+		Assert.hasText(memberUserName);
+
+		ListenableFuture<List<Object>> lookups = UaaFutures.all(getGroupById(groupId),
+				helper.getUserIdByNameAsync(memberUserName));
+
+		return UaaFutures.then(lookups, new Continuation<List<Object>, UaaGroup>() {
+			public ListenableFuture<UaaGroup> apply(List<Object> results) {
+				UaaGroup group = (UaaGroup) results.get(0);
+				String memberId = UaaGroupOperationsImpl.requireUserId(memberUserName, (String) results.get(1));
+
+				return updateGroup(groupId, UaaFutures.immediate(group),
+						UaaGroupOperationsImpl.removing(Collections.singleton(memberId)));
+			}
+		});
+	}
+
+	public ListenableFuture<UaaGroup> addMembers(final String groupId, final Collection<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
+
+		ListenableFuture<List<Object>> lookups = UaaFutures.all(getGroupById(groupId),
+				helper.resolveUserIdsAsync(memberUserNames));
+
+		return UaaFutures.then(lookups, new Continuation<List<Object>, UaaGroup>() {
+			public ListenableFuture<UaaGroup> apply(List<Object> results) {
+				UaaGroup group = (UaaGroup) results.get(0);
+				Collection<String> memberIds = memberIds(memberUserNames, results.get(1));
+
+				return updateGroup(groupId, UaaFutures.immediate(group), UaaGroupOperationsImpl.adding(memberIds));
+			}
+		});
+	}
+
+	public ListenableFuture<UaaGroup> removeMembers(final String groupId, final Collection<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
+
+		ListenableFuture<List<Object>> lookups = UaaFutures.all(getGroupById(groupId),
+				helper.resolveUserIdsAsync(memberUserNames));
+
+		return UaaFutures.then(lookups, new Continuation<List<Object>, UaaGroup>() {
+			public ListenableFuture<UaaGroup> apply(List<Object> results) {
+				UaaGroup group = (UaaGroup) results.get(0);
+				Collection<String> memberIds = memberIds(memberUserNames, results.get(1));
+
+				return updateGroup(groupId, UaaFutures.immediate(group), UaaGroupOperationsImpl.removing(memberIds));
+			}
+		});
+	}
+
+	public ListenableFuture<UaaGroup> setMembers(final String groupId, final Set<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
+
+		ListenableFuture<List<Object>> lookups = UaaFutures.all(getGroupById(groupId),
+				helper.resolveUserIdsAsync(memberUserNames));
+
+		return UaaFutures.then(lookups, new Continuation<List<Object>, UaaGroup>() {
+			public ListenableFuture<UaaGroup> apply(List<Object> results) {
+				UaaGroup group = (UaaGroup) results.get(0);
+				Collection<String> memberIds = memberIds(memberUserNames, results.get(1));
+
+				return updateGroup(groupId, UaaFutures.immediate(group),
+						UaaGroupOperationsImpl.settingUsers(memberIds));
+			}
+		});
+	}
+
+	/**
+	 * @param userNames the usernames that were resolved
+	 * @param resolved the result of {@link UaaConnectionHelper#resolveUserIdsAsync(Collection)}
+	 * @return the user IDs
+	 * @throws org.cloudfoundry.identity.uaa.api.common.model.UaaUnknownUsersException if any of the users does not
+	 * exist
+	 */
+	@SuppressWarnings("unchecked")
+	private static Collection<String> memberIds(Collection<String> userNames, Object resolved) {
+		return UaaGroupOperationsImpl.requireUserIds(userNames, (Map<String, String>) resolved);
+	}
+
+	private ListenableFuture<UaaGroupsResults> getGroupsResults(FilterRequest request) {
+		return helper.getAsync(helper.buildScimFilterUrl("/Groups", request), UaaGroupsResults.class);
+	}
+
+	/**
+	 * Apply a change to the group, re-reading it and trying again if another client changes it first
+	 * 
+	 * @param groupId the group ID
+	 * @param group the future group as read
+	 * @param update the change
+	 * @return the future updated group
+	 */
+	private ListenableFuture<UaaGroup> updateGroup(final String groupId, ListenableFuture<UaaGroup> group,
+			UaaScimUpdate<UaaGroup, UaaModificationGroup> update) {
+		return helper.updateScimObjectAsync("/Groups/{id}", UaaGroup.class, group,
+				new Callable<ListenableFuture<UaaGroup>>() {
+					public ListenableFuture<UaaGroup> call() {
+						return getGroupById(groupId);
+					}
+				}, update, groupId);
+	}
+}
@@ -19,26 +19,35 @@ import static org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject.SCHE
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaScimUpdate;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaUnknownUsersException;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
-import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
 import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMapping;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingIdentifier;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMappingsResults;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupMember;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRef;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRefsResults;
 import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupsResults;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
-import org.springframework.http.HttpHeaders;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -48,6 +57,9 @@ import org.springframework.util.StringUtils;
  * @author Josh Ghiloni
  */
 public class UaaGroupOperationsImpl implements UaaGroupOperations {
+	private static final String USER_MEMBER = "USER";
+
+	static final String[] REF_ATTRIBUTES = { "id", "displayName" };
 
 	private UaaConnectionHelper helper;
 
@@ -70,12 +82,69 @@ public class UaaGroupOperationsImpl implements UaaGroupOperations {
 		helper.delete("/Groups/{id}", Object.class, groupId);
 	}
 
+	public UaaGroup getGroupById(String groupId) {
+		return getGroupById(groupId, null);
+	}
+
+	public UaaGroup getGroupById(String groupId, UaaGroup current) {
+		Assert.hasText(groupId);
+
+		return helper.getScimObject("/Groups/{id}", UaaGroup.class, current, groupId);
+	}
+
 	public UaaGroupsResults getGroups(FilterRequest request) {
 		Assert.notNull(request);
 
 		return helper.get(helper.buildScimFilterUrl("/Groups", request), UaaGroupsResults.class);
 	}
 
+	public PagedResult<UaaGroup> getGroups(FilterRequest request, ResourceConsumer<? super UaaGroup> consumer) {
+		Assert.notNull(request);
+
+		return helper.getResources(helper.buildScimFilterUrl("/Groups", request), UaaGroup.class, consumer);
+	}
+
+	public PagedResult<UaaGroupRef> getGroupRefs(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.get(helper.buildScimFilterUrl("/Groups", request.withAttributes(REF_ATTRIBUTES)),
+				UaaGroupRefsResults.class);
+	}
+
+	public int countGroups(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.count("/Groups", request, "id");
+	}
+
+	public boolean exists(FilterRequest request) {
+		return countGroups(request) > 0;
+	}
+
+	public Iterable<UaaGroup> iterateGroups(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Groups", request, UaaGroupsResults.class);
+	}
+
+	public Iterable<UaaGroup> iterateGroupsById(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterateById("/Groups", request, UaaGroupsResults.class);
+	}
+
+	public List<UaaGroup> fetchAllGroups(FilterRequest request, int parallelism) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Groups", request, UaaGroupsResults.class).fetchAll(parallelism);
+	}
+
+	public int fetchAllGroups(FilterRequest request, int parallelism, ResourceConsumer<? super UaaGroup> consumer) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Groups", request, UaaGroupsResults.class).fetchAll(parallelism, consumer);
+	}
+
 	public UaaGroupMapping createGroupMapping(UaaGroupMappingIdentifier type, String identifier, String externalGroupDn) {
 		Assert.notNull(type);
 		Assert.hasText(identifier);
@@ -114,75 +183,270 @@ public class UaaGroupOperationsImpl implements UaaGroupOperations {
 		return helper.get(helper.buildScimFilterUrl("/Groups/External", request), UaaGroupMappingsResults.class);
 	}
 
-	public UaaGroup updateGroupName(String groupId, String newName) {
-		UaaGroup group = getGroupById(groupId);
-		group.setDisplayName(newName);
+	public PagedResult<UaaGroupMapping> getGroupMappings(FilterRequest request,
+			ResourceConsumer<? super UaaGroupMapping> consumer) {
+		Assert.notNull(request);
 
-		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+		return helper.getResources(helper.buildScimFilterUrl("/Groups/External", request), UaaGroupMapping.class,
+				consumer);
+	}
 
-		return updateGroup(modGroup);
+	public Iterable<UaaGroupMapping> iterateGroupMappings(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Groups/External", request, UaaGroupMappingsResults.class);
 	}
 
-	public UaaGroup addMember(String groupId, String memberUserName) {
-		Assert.hasText(memberUserName);
+	public List<UaaGroupMapping> fetchAllGroupMappings(FilterRequest request, int parallelism) {
+		Assert.notNull(request);
 
-		UaaGroup group = getGroupById(groupId);
-		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+		return helper.iterate("/Groups/External", request, UaaGroupMappingsResults.class).fetchAll(parallelism);
+	}
 
-		String memberId = helper.getUserIdByName(memberUserName);
+	public int fetchAllGroupMappings(FilterRequest request, int parallelism,
+			ResourceConsumer<? super UaaGroupMapping> consumer) {
+		Assert.notNull(request);
 
-		Collection<String> members = modGroup.getMembers();
-		if (members == null) {
-			members = new ArrayList<String>(1);
-		}
+		return helper.iterate("/Groups/External", request, UaaGroupMappingsResults.class).fetchAll(parallelism,
+				consumer);
+	}
+
+	public UaaGroup updateGroupName(String groupId, String newName) {
+		return updateGroup(groupId, getGroupById(groupId), renaming(newName));
+	}
+
+	public UaaGroup addMember(String groupId, String memberUserName) {
+		Assert.hasText(memberUserName);
 
-		members.add(memberId);
-		modGroup.setMembers(members);
+		Future<UaaGroup> group = forkGetGroupById(groupId);
+		String memberId = requireUserId(memberUserName, helper.getUserIdByName(memberUserName));
 
-		return updateGroup(modGroup);
+		return updateGroup(groupId, UaaConnectionHelper.join(group), adding(Collections.singleton(memberId)));
 	}
 
 	public UaaGroup deleteMember(String groupId, String memberUserName) {
 		Assert.hasText(memberUserName);
 
-		UaaGroup group = getGroupById(groupId);
-		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+		Future<UaaGroup> group = forkGetGroupById(groupId);
+		String memberId = requireUserId(memberUserName, helper.getUserIdByName(memberUserName));
 
-		String memberId = helper.getUserIdByName(memberUserName);
+		return updateGroup(groupId, UaaConnectionHelper.join(group), removing(Collections.singleton(memberId)));
+	}
 
-		Collection<String> members = modGroup.getMembers();
-		if (members != null && !members.isEmpty()) {
-			for (Iterator<String> iter = members.iterator(); iter.hasNext();) {
-				String member = iter.next();
+	public UaaGroup addMembers(String groupId, Collection<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
 
-				if (memberId.equals(member)) {
-					iter.remove();
-					break;
-				}
+		Future<UaaGroup> group = forkGetGroupById(groupId);
+		Collection<String> memberIds = requireUserIds(memberUserNames, helper.resolveUserIds(memberUserNames));
+
+		return updateGroup(groupId, UaaConnectionHelper.join(group), adding(memberIds));
+	}
+
+	public UaaGroup removeMembers(String groupId, Collection<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
+
+		Future<UaaGroup> group = forkGetGroupById(groupId);
+		Collection<String> memberIds = requireUserIds(memberUserNames, helper.resolveUserIds(memberUserNames));
+
+		return updateGroup(groupId, UaaConnectionHelper.join(group), removing(memberIds));
+	}
+
+	public UaaGroup setMembers(String groupId, Set<String> memberUserNames) {
+		Assert.notNull(memberUserNames);
+
+		Future<UaaGroup> group = forkGetGroupById(groupId);
+		Collection<String> memberIds = requireUserIds(memberUserNames, helper.resolveUserIds(memberUserNames));
+
+		return updateGroup(groupId, UaaConnectionHelper.join(group), settingUsers(memberIds));
+	}
+
+	/**
+	 * @param userName a username
+	 * @param userId the ID it was resolved to, or null if there is no such user
+	 * @return the ID
+	 * @throws UaaUnknownUsersException if there is no such user
+	 */
+	static String requireUserId(String userName, String userId) {
+		if (userId == null) {
+			throw new UaaUnknownUsersException(Collections.singleton(userName));
+		}
+
+		return userId;
+	}
+
+	/**
+	 * @param userNames the usernames that were resolved
+	 * @param userIds the IDs they were resolved to, as returned by
+	 * {@link UaaConnectionHelper#resolveUserIds(Collection)}
+	 * @return the IDs
+	 * @throws UaaUnknownUsersException if any of the users does not exist, so that the group is never written with
+	 * some of them missing
+	 */
+	static Collection<String> requireUserIds(Collection<String> userNames, Map<String, String> userIds) {
+		Set<String> unknown = new LinkedHashSet<String>();
+		for (String userName : userNames) {
+			if (!userIds.containsKey(userName)) {
+				unknown.add(userName);
 			}
 		}
 
-		return updateGroup(modGroup);
+		if (!unknown.isEmpty()) {
+			throw new UaaUnknownUsersException(unknown);
+		}
+
+		return userIds.values();
+	}
+
+	/**
+	 * @param newName the new display name
+	 * @return the change that renames a group
+	 */
+	static UaaScimUpdate<UaaGroup, UaaModificationGroup> renaming(final String newName) {
+		return new UaaScimUpdate<UaaGroup, UaaModificationGroup>() {
+			public UaaModificationGroup apply(UaaGroup current) {
+				UaaModificationGroup modGroup = new UaaModificationGroup(current);
+				modGroup.setDisplayName(newName);
+
+				return modGroup;
+			}
+		};
 	}
 
-	private UaaGroup getGroupById(String groupId) {
-		FilterRequest request = new FilterRequestBuilder().equals("id", groupId).build();
-		UaaGroupsResults results = getGroups(request);
+	/**
+	 * @param memberIds the IDs of the members to add
+	 * @return the change that adds the members, if they are not members already
+	 */
+	static UaaScimUpdate<UaaGroup, UaaModificationGroup> adding(final Collection<String> memberIds) {
+		return new UaaScimUpdate<UaaGroup, UaaModificationGroup>() {
+			public UaaModificationGroup apply(UaaGroup current) {
+				return withMembers(current, memberIds);
+			}
+		};
+	}
+
+	/**
+	 * @param memberIds the IDs of the members to remove
+	 * @return the change that removes the members, if any of them are members
+	 */
+	static UaaScimUpdate<UaaGroup, UaaModificationGroup> removing(final Collection<String> memberIds) {
+		return new UaaScimUpdate<UaaGroup, UaaModificationGroup>() {
+			public UaaModificationGroup apply(UaaGroup current) {
+				return withoutMembers(current, memberIds);
+			}
+		};
+	}
 
-		if (results.getTotalResults() > 0) {
-			return results.getResources().iterator().next();
+	/**
+	 * @param userIds the IDs of the users that should be members
+	 * @return the change that makes exactly those users members, if they are not already
+	 */
+	static UaaScimUpdate<UaaGroup, UaaModificationGroup> settingUsers(final Collection<String> userIds) {
+		return new UaaScimUpdate<UaaGroup, UaaModificationGroup>() {
+			public UaaModificationGroup apply(UaaGroup current) {
+				return withUserMembers(current, userIds);
+			}
+		};
+	}
+
+	/**
+	 * @param group the group as read from the server
+	 * @param memberIds the IDs of the members to add
+	 * @return the modification request for the group with the members added, or null if they all already are members
+	 */
+	static UaaModificationGroup withMembers(UaaGroup group, Collection<String> memberIds) {
+		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+
+		Set<String> members = new LinkedHashSet<String>();
+		if (modGroup.getMembers() != null) {
+			members.addAll(modGroup.getMembers());
+		}
+
+		if (!members.addAll(memberIds)) {
+			return null;
 		}
 
-		return null;
+		modGroup.setMembers(new ArrayList<String>(members));
+		return modGroup;
 	}
 
-	private UaaGroup updateGroup(UaaModificationGroup group) {
-		Assert.notNull(group);
+	/**
+	 * @param group the group as read from the server
+	 * @param memberIds the IDs of the members to remove
+	 * @return the modification request for the group with the members removed, or null if none of them are members
+	 */
+	static UaaModificationGroup withoutMembers(UaaGroup group, Collection<String> memberIds) {
+		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+
+		Collection<String> members = modGroup.getMembers();
+		if (members == null || !members.removeAll(new HashSet<String>(memberIds))) {
+			return null;
+		}
+
+		return modGroup;
+	}
 
-		HttpHeaders headers = new HttpHeaders();
-		headers.set("if-match", group.getMeta().get("version"));
+	/**
+	 * @param group the group as read from the server
+	 * @param userIds the IDs of the users that should be members
+	 * @return the modification request for the group with exactly those users as members, or null if it already has
+	 * them. Members that are not users (such as nested groups) are kept
+	 */
+	static UaaModificationGroup withUserMembers(UaaGroup group, Collection<String> userIds) {
+		Set<String> desired = new LinkedHashSet<String>(userIds);
+		Set<String> current = new HashSet<String>();
+		List<String> others = new ArrayList<String>();
+
+		if (group.getMembers() != null) {
+			for (UaaGroupMember member : group.getMembers()) {
+				if (member.getType() == null || USER_MEMBER.equalsIgnoreCase(member.getType())) {
+					current.add(member.getValue());
+				}
+				else {
+					others.add(member.getValue());
+				}
+			}
+		}
+
+		if (current.equals(desired)) {
+			return null;
+		}
+
+		others.addAll(desired);
 
-		return helper.putScimObject("/Groups/{id}", group, UaaGroup.class, group.getId());
+		UaaModificationGroup modGroup = new UaaModificationGroup(group);
+		modGroup.setMembers(others);
+		return modGroup;
+	}
+
+	/**
+	 * Start reading the group in the background, so that it can be done while the members are looked up
+	 * 
+	 * @param groupId the group ID
+	 * @return the pending group
+	 */
+	private Future<UaaGroup> forkGetGroupById(final String groupId) {
+		return helper.fork(new Callable<UaaGroup>() {
+			public UaaGroup call() {
+				return getGroupById(groupId);
+			}
+		});
+	}
+
+	/**
+	 * Apply a change to the group, re-reading it and trying again if another client changes it first
+	 * 
+	 * @param groupId the group ID
+	 * @param group the group as already read
+	 * @param update the change
+	 * @return the updated group
+	 */
+	private UaaGroup updateGroup(final String groupId, UaaGroup group,
+			UaaScimUpdate<UaaGroup, UaaModificationGroup> update) {
+		return helper.updateScimObject("/Groups/{id}", UaaGroup.class, group, new Callable<UaaGroup>() {
+			public UaaGroup call() {
+				return getGroupById(groupId);
+			}
+		}, update, groupId);
 	}
 
 	@JsonIgnoreProperties(ignoreUnknown = true)
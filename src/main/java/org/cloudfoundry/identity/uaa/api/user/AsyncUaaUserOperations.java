@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.user;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * The non-blocking counterpart of {@link UaaUserOperations}. Failures are reported through the returned future rather
+ * than thrown.
+ */
+public interface AsyncUaaUserOperations {
+	/**
+	 * @param user The (partial) user information to be created
+	 * @return The newly created user
+	 * @see UaaUserOperations#createUser(UaaUser)
+	 */
+	public ListenableFuture<UaaUser> createUser(UaaUser user);
+
+	/**
+	 * @param user the updated user
+	 * @return the user as returned from the UAA api
+	 * @see UaaUserOperations#updateUser(UaaUser)
+	 */
+	public ListenableFuture<UaaUser> updateUser(UaaUser user);
+
+	/**
+	 * @param userId The id of the user
+	 * @return a future that completes when the user has been deleted
+	 * @see UaaUserOperations#deleteUser(String)
+	 */
+	public ListenableFuture<Void> deleteUser(String userId);
+
+	/**
+	 * @param userId the user's id (not their username)
+	 * @param newPassword the new password
+	 * @return a future that completes when the password has been changed
+	 * @see UaaUserOperations#changeUserPassword(String, String)
+	 */
+	public ListenableFuture<Void> changeUserPassword(String userId, String newPassword);
+
+	/**
+	 * @param userId the user's id (not their username)
+	 * @return the user, or null if the user does not exist
+	 * @see UaaUserOperations#getUserById(String)
+	 */
+	public ListenableFuture<UaaUser> getUserById(String userId);
+
+	/**
+	 * @param userId the user's id (not their username)
+	 * @param current the copy of the user already held, or null if there is none
+	 * @return the user, <code>current</code> if it has not changed, or null if the user does not exist
+	 * @see UaaUserOperations#getUserById(String, UaaUser)
+	 */
+	public ListenableFuture<UaaUser> getUserById(String userId, UaaUser current);
+
+	/**
+	 * @param userName the user's username
+	 * @return the user object for this user, or null if the user does not exist
+	 * @see UaaUserOperations#getUserByName(String)
+	 */
+	public ListenableFuture<UaaUser> getUserByName(String userName);
+
+	/**
+	 * @param userName the user's username
+	 * @param attributes the attributes to read
+	 * @return the user object for this user with only those attributes set, or null if the user does not exist
+	 * @see UaaUserOperations#getUserByName(String, String...)
+	 */
+	public ListenableFuture<UaaUser> getUserByName(String userName, String... attributes);
+
+	/**
+	 * @param userNames the users' usernames
+	 * @return the future ID of each user that exists, keyed by username
+	 * @see UaaUserOperations#resolveUserIds(Collection)
+	 */
+	public ListenableFuture<Map<String, String>> resolveUserIds(Collection<String> userNames);
+
+	/**
+	 * @param request the {@link FilterRequest}
+	 * @return The page of users.
+	 * @see UaaUserOperations#getUsers(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaUser>> getUsers(FilterRequest request);
+
+	/**
+	 * @param request the {@link FilterRequest}
+	 * @return The page of user IDs and usernames.
+	 * @see UaaUserOperations#getUserRefs(FilterRequest)
+	 */
+	public ListenableFuture<PagedResult<UaaUserRef>> getUserRefs(FilterRequest request);
+}
@@ -15,10 +15,16 @@
  */
 package org.cloudfoundry.identity.uaa.api.user;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
 
 /**
  * Provides endpoints to the UAA user APIs specified <a
@@ -63,6 +69,25 @@ public interface UaaUserOperations {
 	 */
 	public void changeUserPassword(String userId, String newPassword);
 
+	/**
+	 * Read a user by their id. This reads the user's own resource rather than searching for it.
+	 * 
+	 * @param userId the user's id (not their username)
+	 * @return the user, or null if the user does not exist
+	 */
+	public UaaUser getUserById(String userId);
+
+	/**
+	 * Read a user by their id, unless the copy already held is up to date. The copy's version is sent as the
+	 * <code>If-None-Match</code> header, and if the user has not changed since, the server does not send it again.
+	 * 
+	 * @param userId the user's id (not their username)
+	 * @param current the copy of the user already held, or null if there is none
+	 * @return the user, <code>current</code> if it has not changed, or null if the user does not exist
+	 * @see #getUserById(String)
+	 */
+	public UaaUser getUserById(String userId, UaaUser current);
+
 	/**
 	 * Looks up a user in the database by their name.
 	 * 
@@ -72,6 +97,25 @@ public interface UaaUserOperations {
 	 */
 	public UaaUser getUserByName(String userName);
 
+	/**
+	 * Looks up a user in the database by their name, asking the server for only the given attributes. The other
+	 * properties of the returned user are null.
+	 * 
+	 * @param userName the user's username
+	 * @param attributes the attributes to read, such as <code>id</code> or <code>emails</code>
+	 * @return the user object for this user, or null if the user does not exist or the operation fails
+	 * @see #getUserByName(String)
+	 */
+	public UaaUser getUserByName(String userName, String... attributes);
+
+	/**
+	 * Look up the IDs of many users by their names, using as few requests as possible
+	 * 
+	 * @param userNames the users' usernames
+	 * @return the ID of each user that exists, keyed by username. Users that do not exist are absent from the map
+	 */
+	public Map<String, String> resolveUserIds(Collection<String> userNames);
+
 	/**
 	 * Get a page of users based on the given {@link FilterRequest}
 	 * 
@@ -80,4 +124,90 @@ public interface UaaUserOperations {
 	 * @see org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder
 	 */
 	public PagedResult<UaaUser> getUsers(FilterRequest request);
+
+	/**
+	 * Get a page of users based on the given {@link FilterRequest}, handing each user to the consumer as soon as it has
+	 * been read instead of collecting them
+	 * 
+	 * @param request the {@link FilterRequest}
+	 * @param consumer receives the users, on the calling thread
+	 * @return The paging information of the page. Its resources are null
+	 * @see #getUsers(FilterRequest)
+	 */
+	public PagedResult<UaaUser> getUsers(FilterRequest request, ResourceConsumer<? super UaaUser> consumer);
+
+	/**
+	 * Get a page of user IDs and usernames based on the given {@link FilterRequest}. Only those two attributes are
+	 * requested.
+	 * 
+	 * @param request the {@link FilterRequest}. Its attributes are ignored
+	 * @return The page of users.
+	 * @see #getUsers(FilterRequest)
+	 */
+	public PagedResult<UaaUserRef> getUserRefs(FilterRequest request);
+
+	/**
+	 * Count the users matching the given {@link FilterRequest}, without downloading them
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return the number of matching users
+	 */
+	public int countUsers(FilterRequest request);
+
+	/**
+	 * Check whether any user matches the given {@link FilterRequest}, without downloading it
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index, count, attributes and sort order are ignored
+	 * @return true if at least one user matches
+	 * @see #countUsers(FilterRequest)
+	 */
+	public boolean exists(FilterRequest request);
+
+	/**
+	 * Iterate over every user matching the given {@link FilterRequest}. Users are fetched a page at a time as the
+	 * iteration proceeds, and only the current page (plus any pages read ahead) is held in memory.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @return the users
+	 * @see org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings#getPageSize()
+	 */
+	public Iterable<UaaUser> iterateUsers(FilterRequest request);
+
+	/**
+	 * Iterate over every user matching the given {@link FilterRequest} in order of ID. Each page asks for the users
+	 * after the last ID seen instead of skipping to a start index, so deep pages are as cheap for the server as the
+	 * first, and users created or deleted during the iteration do not cause others to be skipped or repeated.
+	 * 
+	 * @param request the {@link FilterRequest}. Its start index and sort order are ignored. If it sets a count, that
+	 * is the page size; otherwise the connection's page size is used
+	 * @return the users
+	 * @see #iterateUsers(FilterRequest)
+	 */
+	public Iterable<UaaUser> iterateUsersById(FilterRequest request);
+
+	/**
+	 * Fetch all users matching the given {@link FilterRequest}. After the first page, which gives the total number of
+	 * results, the remaining pages are fetched concurrently.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @return the users, in the order the server returned them
+	 * @see #iterateUsers(FilterRequest)
+	 */
+	public List<UaaUser> fetchAllUsers(FilterRequest request, int parallelism);
+
+	/**
+	 * Fetch all users matching the given {@link FilterRequest}, fetching the pages after the first concurrently and
+	 * handing each user to the consumer as soon as it has been read, in no particular order. The consumer is never
+	 * called by two threads at once.
+	 * 
+	 * @param request the {@link FilterRequest}. If it sets a count, that is the page size; otherwise the connection's
+	 * page size is used
+	 * @param parallelism the maximum number of pages to fetch at the same time
+	 * @param consumer receives the users
+	 * @return the number of users delivered
+	 */
+	public int fetchAllUsers(FilterRequest request, int parallelism, ResourceConsumer<? super UaaUser> consumer);
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.user.impl;
+
+import static org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject.SCHEMAS;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.user.AsyncUaaUserOperations;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRefsResults;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUsersResults;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+
+/**
+ * @see AsyncUaaUserOperations
+ */
+public class AsyncUaaUserOperationsImpl implements AsyncUaaUserOperations {
+	private UaaConnectionHelper helper;
+
+	public AsyncUaaUserOperationsImpl(UaaConnectionHelper helper) {
+		this.helper = helper;
+	}
+
+	public ListenableFuture<UaaUser> createUser(UaaUser user) {
+		Assert.notNull(user);
+		Assert.hasText(user.getUserName());
+
+		user.setSchemas(SCHEMAS);
+
+		return new ListenableFutureAdapter<UaaUser, UaaUser>(helper.postAsync("/Users", user, UaaUser.class)) {
+			@Override
+			protected UaaUser adapt(UaaUser created) {
+				if (created != null && created.getId() != null) {
+					helper.rememberUserId(created.getUserName(), created.getId());
+				}
+
+				return created;
+			}
+		};
+	}
+
+	public ListenableFuture<UaaUser> updateUser(final UaaUser user) {
+		Assert.notNull(user);
+		Assert.hasText(user.getId());
+
+		// don't try to update the stuff we can't update here
+		user.setGroups(null);
+		user.setPassword(null);
+
+		ListenableFuture<UaaUser> response = helper.putScimObjectAsync("/Users/{id}", user, UaaUser.class,
+				user.getId());
+
+		return new ListenableFutureAdapter<UaaUser, UaaUser>(response) {
+			@Override
+			protected UaaUser adapt(UaaUser updated) {
+				// the user name may have changed
+				helper.forgetUserId(user.getId());
+				return updated;
+			}
+		};
+	}
+
+	public ListenableFuture<Void> deleteUser(final String userId) {
+		Assert.hasText(userId);
+
+		return new ListenableFutureAdapter<Void, String>(helper.deleteAsync("/Users/{id}", String.class, userId)) {
+			@Override
+			protected Void adapt(String result) {
+				helper.forgetUserId(userId);
+				return null;
+			}
+		};
+	}
+
+	public ListenableFuture<Void> changeUserPassword(String userId, String newPassword) {
+		Assert.hasText(userId);
+		Assert.hasText(newPassword);
+
+		return UaaFutures.discard(helper.putAsync("/Users/{id}/password",
+				Collections.singletonMap("password", newPassword), String.class, userId));
+	}
+
+	public ListenableFuture<PagedResult<UaaUser>> getUsers(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaUser>> widen(helper.getAsync(helper.buildScimFilterUrl("/Users", request),
+				UaaUsersResults.class));
+	}
+
+	public ListenableFuture<PagedResult<UaaUserRef>> getUserRefs(FilterRequest request) {
+		Assert.notNull(request);
+
+		return UaaFutures.<PagedResult<UaaUserRef>> widen(helper.getAsync(helper.buildScimFilterUrl("/Users",
+				request.withAttributes(UaaUserOperationsImpl.REF_ATTRIBUTES)), UaaUserRefsResults.class));
+	}
+
+	public ListenableFuture<UaaUser> getUserById(String userId) {
+		return getUserById(userId, null);
+	}
+
+	public ListenableFuture<UaaUser> getUserById(String userId, UaaUser current) {
+		Assert.hasText(userId);
+
+		return helper.getScimObjectAsync("/Users/{id}", UaaUser.class, current, userId);
+	}
+
+	public ListenableFuture<UaaUser> getUserByName(String userName) {
+		return getUserByName(userName, (String[]) null);
+	}
+
+	public ListenableFuture<UaaUser> getUserByName(String userName, String... attributes) {
+		FilterRequest request = UaaUserOperationsImpl.userByNameRequest(userName, attributes);
+
+		return new ListenableFutureAdapter<UaaUser, PagedResult<UaaUser>>(getUsers(request)) {
+			@Override
+			protected UaaUser adapt(PagedResult<UaaUser> result) {
+				if (result != null && result.getResources() != null && result.getResources().size() == 1) {
+					return result.getResources().iterator().next();
+				}
+
+				return null;
+			}
+		};
+	}
+
+	public ListenableFuture<Map<String, String>> resolveUserIds(Collection<String> userNames) {
+		return helper.resolveUserIdsAsync(userNames);
+	}
+}
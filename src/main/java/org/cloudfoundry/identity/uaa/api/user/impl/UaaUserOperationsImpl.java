@@ -17,14 +17,20 @@ package org.cloudfoundry.identity.uaa.api.user.impl;
 
 import static org.cloudfoundry.identity.uaa.api.common.model.ScimMetaObject.SCHEMAS;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.cloudfoundry.identity.uaa.api.common.impl.UaaConnectionHelper;
 import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
 import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
 import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRefsResults;
 import org.cloudfoundry.identity.uaa.api.user.model.UaaUsersResults;
 import org.springframework.util.Assert;
 
@@ -35,6 +41,8 @@ import org.springframework.util.Assert;
  *
  */
 public class UaaUserOperationsImpl implements UaaUserOperations {
+	static final String[] REF_ATTRIBUTES = { "id", "userName" };
+
 	private UaaConnectionHelper helper;
 
 	public UaaUserOperationsImpl(UaaConnectionHelper helper) {
@@ -47,7 +55,12 @@ public class UaaUserOperationsImpl implements UaaUserOperations {
 
 		user.setSchemas(SCHEMAS);
 
-		return helper.post("/Users", user, UaaUser.class);
+		UaaUser created = helper.post("/Users", user, UaaUser.class);
+		if (created != null && created.getId() != null) {
+			helper.rememberUserId(created.getUserName(), created.getId());
+		}
+
+		return created;
 	}
 
 	public UaaUser updateUser(UaaUser user) {
@@ -58,12 +71,18 @@ public class UaaUserOperationsImpl implements UaaUserOperations {
 		user.setGroups(null);
 		user.setPassword(null);
 
-		return helper.putScimObject("/Users/{id}", user, UaaUser.class, user.getId());
+		UaaUser updated = helper.putScimObject("/Users/{id}", user, UaaUser.class, user.getId());
+
+		// the user name may have changed
+		helper.forgetUserId(user.getId());
+
+		return updated;
 	}
 
 	public void deleteUser(String userId) {
 		Assert.hasText(userId);
 		helper.delete("/Users/{id}", String.class, userId);
+		helper.forgetUserId(userId);
 	}
 
 	public void changeUserPassword(String userId, String newPassword) {
@@ -79,8 +98,69 @@ public class UaaUserOperationsImpl implements UaaUserOperations {
 		return helper.get(helper.buildScimFilterUrl("/Users", request), UaaUsersResults.class);
 	}
 
+	public PagedResult<UaaUser> getUsers(FilterRequest request, ResourceConsumer<? super UaaUser> consumer) {
+		Assert.notNull(request);
+
+		return helper.getResources(helper.buildScimFilterUrl("/Users", request), UaaUser.class, consumer);
+	}
+
+	public PagedResult<UaaUserRef> getUserRefs(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.get(helper.buildScimFilterUrl("/Users", request.withAttributes(REF_ATTRIBUTES)),
+				UaaUserRefsResults.class);
+	}
+
+	public int countUsers(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.count("/Users", request, "id");
+	}
+
+	public boolean exists(FilterRequest request) {
+		return countUsers(request) > 0;
+	}
+
+	public Iterable<UaaUser> iterateUsers(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Users", request, UaaUsersResults.class);
+	}
+
+	public Iterable<UaaUser> iterateUsersById(FilterRequest request) {
+		Assert.notNull(request);
+
+		return helper.iterateById("/Users", request, UaaUsersResults.class);
+	}
+
+	public List<UaaUser> fetchAllUsers(FilterRequest request, int parallelism) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Users", request, UaaUsersResults.class).fetchAll(parallelism);
+	}
+
+	public int fetchAllUsers(FilterRequest request, int parallelism, ResourceConsumer<? super UaaUser> consumer) {
+		Assert.notNull(request);
+
+		return helper.iterate("/Users", request, UaaUsersResults.class).fetchAll(parallelism, consumer);
+	}
+
+	public UaaUser getUserById(String userId) {
+		return getUserById(userId, null);
+	}
+
+	public UaaUser getUserById(String userId, UaaUser current) {
+		Assert.hasText(userId);
+
+		return helper.getScimObject("/Users/{id}", UaaUser.class, current, userId);
+	}
+
 	public UaaUser getUserByName(String userName) {
-		FilterRequest request = new FilterRequestBuilder().equals("username", userName).build();
+		return getUserByName(userName, (String[]) null);
+	}
+
+	public UaaUser getUserByName(String userName, String... attributes) {
+		FilterRequest request = userByNameRequest(userName, attributes);
 		PagedResult<UaaUser> result = getUsers(request);
 
 		if (result != null && result.getResources() != null && result.getResources().size() == 1) {
@@ -89,4 +169,12 @@ public class UaaUserOperationsImpl implements UaaUserOperations {
 
 		return null;
 	}
+
+	public Map<String, String> resolveUserIds(Collection<String> userNames) {
+		return helper.resolveUserIds(userNames);
+	}
+
+	static FilterRequest userByNameRequest(String userName, String... attributes) {
+		return new FilterRequestBuilder().equals("username", userName).attributes(attributes).build();
+	}
 }
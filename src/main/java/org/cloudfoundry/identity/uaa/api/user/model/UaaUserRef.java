@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.user.model;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
+
+/**
+ * Just the ID and username of a user, for lookups that need nothing else. Reading these instead of {@link UaaUser}
+ * objects asks the server for only those two attributes.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonSerialize(include = Inclusion.NON_NULL)
+public class UaaUserRef {
+	private String id;
+
+	private String userName;
+
+	/**
+	 * @return the user's id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @param id the user's id
+	 */
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the user's username
+	 */
+	public String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * @param userName the user's username
+	 */
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+}
@@ -22,6 +22,7 @@ import java.net.Socket;
 import java.net.URL;
 
 import org.cloudfoundry.identity.uaa.api.UaaConnectionFactory;
+import org.cloudfoundry.identity.uaa.api.common.AsyncUaaConnection;
 import org.cloudfoundry.identity.uaa.api.common.UaaConnection;
 import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
 
@@ -34,6 +35,8 @@ public abstract class AbstractOperationTest {
 
 	private static UaaConnection connection;
 
+	private static AsyncUaaConnection asyncConnection;
+
 	protected static void init() throws Exception {
 		try {
 			Socket test = new Socket("localhost", 8080);
@@ -48,6 +51,8 @@ public abstract class AbstractOperationTest {
 		finally {
 			UaaCredentials credentials = new UaaCredentials("admin", "adminsecret");
 			connection = UaaConnectionFactory.getConnection(new URL("http://localhost:8080/uaa"), credentials);
+			asyncConnection = UaaConnectionFactory.getAsyncConnection(new URL("http://localhost:8080/uaa"),
+					credentials);
 		}
 	}
 
@@ -58,4 +63,8 @@ public abstract class AbstractOperationTest {
 	protected static UaaConnection getConnection() {
 		return connection;
 	}
+
+	protected static AsyncUaaConnection getAsyncConnection() {
+		return asyncConnection;
+	}
 }
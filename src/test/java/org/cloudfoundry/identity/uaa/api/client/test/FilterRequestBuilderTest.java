@@ -16,6 +16,7 @@
 package org.cloudfoundry.identity.uaa.api.client.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
@@ -25,6 +26,7 @@ import java.util.TimeZone;
 
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
 import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.SortOrder;
 import org.junit.Test;
 
 /**
@@ -176,6 +178,45 @@ public class FilterRequestBuilderTest {
 
 		assertEquals(10, request.getStart());
 	}
+
+	@Test
+	public void testSort() throws Exception {
+		FilterRequestBuilder builder = new FilterRequestBuilder();
+		FilterRequest request = builder.build();
+
+		assertNull(request.getSortBy());
+		assertNull(request.getSortOrder());
+
+		builder = new FilterRequestBuilder().sortBy("userName");
+		request = builder.build();
+
+		assertEquals("userName", request.getSortBy());
+		assertEquals(SortOrder.ASCENDING, request.getSortOrder());
+
+		builder = new FilterRequestBuilder().sortBy("meta.lastModified", SortOrder.DESCENDING).count(100);
+		request = builder.build();
+
+		assertEquals("meta.lastModified", request.getSortBy());
+		assertEquals("descending", request.getSortOrder().toString());
+
+		request = request.withPage(101, 100);
+		assertEquals("meta.lastModified", request.getSortBy());
+		assertEquals(SortOrder.DESCENDING, request.getSortOrder());
+	}
+
+	@Test
+	public void testAfter() throws Exception {
+		FilterRequest request = FilterRequestBuilder.showAll().after("id", "abc");
+		assertEquals("id gt \"abc\"", request.getFilter());
+
+		request = new FilterRequestBuilder().equals("foo", "bar").present("test").or().attributes("id")
+				.sortBy("id").count(10).build().after("id", "abc");
+
+		assertEquals("(foo eq \"bar\" or test pr) and id gt \"abc\"", request.getFilter());
+		assertEquals(Arrays.asList("id"), request.getAttributes());
+		assertEquals("id", request.getSortBy());
+		assertEquals(10, request.getCount());
+	}
 	
 	@Test
 	public void testSubsequentPrecedence() throws Exception {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.StreamUtils;
+
+/**
+ * An HTTP server on a local port standing in for UAA. It grants an access token to anyone who asks, and answers every
+ * other request with the handler given by the test, recording the requests it receives. Each token it grants has a
+ * new value, <code>token-1</code>, <code>token-2</code> and so on, and comes with a refresh token.
+ */
+class FakeUaaServer {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final HttpServer server;
+
+	private final List<String> requests = new ArrayList<String>();
+
+	private final List<String> grantTypes = new ArrayList<String>();
+
+	private final AtomicInteger tokens = new AtomicInteger();
+
+	private volatile int tokenLifetime = 3600;
+
+	private volatile long tokenDelay;
+
+	private volatile boolean refreshRejected;
+
+	FakeUaaServer(final HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+		server.createContext("/oauth/token", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				grantToken(exchange);
+			}
+		});
+
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				synchronized (requests) {
+					requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getRawPath());
+				}
+
+				handler.handle(exchange);
+			}
+		});
+
+		server.start();
+	}
+
+	private void grantToken(HttpExchange exchange) throws IOException {
+		String grantType = null;
+		for (String param : read(exchange).split("&")) {
+			if (param.startsWith("grant_type=")) {
+				grantType = param.substring("grant_type=".length());
+			}
+		}
+
+		synchronized (grantTypes) {
+			grantTypes.add(grantType);
+		}
+
+		if (tokenDelay > 0) {
+			try {
+				Thread.sleep(tokenDelay);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (refreshRejected && "refresh_token".equals(grantType)) {
+			respond(exchange, 400, "{\"error\":\"invalid_grant\",\"error_description\":\"Refresh token expired\"}");
+			return;
+		}
+
+		int n = tokens.incrementAndGet();
+		respond(exchange, 200, "{\"access_token\":\"token-" + n + "\",\"token_type\":\"bearer\",\"expires_in\":"
+				+ tokenLifetime + ",\"refresh_token\":\"refresh-" + n + "\"}");
+	}
+
+	/**
+	 * @return the base URL of the server
+	 */
+	URL getUrl() throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	/**
+	 * @return the method and path of each request received so far, other than for tokens
+	 */
+	List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<String>(requests);
+		}
+	}
+
+	/**
+	 * @return the grant type of each token request received so far
+	 */
+	List<String> getGrantTypes() {
+		synchronized (grantTypes) {
+			return new ArrayList<String>(grantTypes);
+		}
+	}
+
+	/**
+	 * @param seconds the lifetime of the tokens granted from now on. A lifetime of 0 grants tokens that have already
+	 * expired by the time the client reads them
+	 */
+	void setTokenLifetime(int seconds) {
+		tokenLifetime = seconds;
+	}
+
+	/**
+	 * @param millis how long the token endpoint takes to answer
+	 */
+	void setTokenDelay(long millis) {
+		tokenDelay = millis;
+	}
+
+	/**
+	 * @param rejected true to reject every refresh token, as happens once they expire
+	 */
+	void setRefreshRejected(boolean rejected) {
+		refreshRejected = rejected;
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * @return the body of the request
+	 */
+	static String read(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		try {
+			return StreamUtils.copyToString(in, UTF8);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Send a JSON response
+	 */
+	static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(body);
+		}
+		finally {
+			out.close();
+		}
+	}
+}
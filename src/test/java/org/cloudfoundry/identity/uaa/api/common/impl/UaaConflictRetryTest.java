@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Tests the optimistic concurrency loop of
+ * {@link UaaConnectionHelper#updateScimObject(String, Class, Object, Callable, UaaScimUpdate, Object...)}. The server
+ * holds one group, and can be told to behave as if other clients changed it just before the next few updates.
+ */
+public class UaaConflictRetryTest {
+	private static final Pattern DISPLAY_NAME = Pattern.compile("\"displayName\":\"([^\"]*)\"");
+
+	private FakeUaaServer server;
+
+	private final AtomicInteger version = new AtomicInteger();
+
+	private final AtomicInteger concurrentChanges = new AtomicInteger();
+
+	private final AtomicInteger rereads = new AtomicInteger();
+
+	private final AtomicBoolean deleted = new AtomicBoolean();
+
+	private UaaConnectionSettings settings;
+
+	private UaaConnectionHelper helper;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				Matcher matcher = DISPLAY_NAME.matcher(FakeUaaServer.read(exchange));
+				String displayName = matcher.find() ? matcher.group(1) : null;
+				String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+
+				if (concurrentChanges.getAndDecrement() > 0) {
+					version.incrementAndGet();
+				}
+
+				if (!String.valueOf(version.get()).equals(ifMatch)) {
+					FakeUaaServer.respond(exchange, 409, "{\"error\":\"optimistic_locking_failure\","
+							+ "\"message\":\"Attempt to update a group (g1) with wrong version: expected="
+							+ version.get() + " but found=" + ifMatch + "\"}");
+				}
+				else if ("dup".equals(displayName) || "version2".equals(displayName)) {
+					FakeUaaServer.respond(exchange, 409, "{\"error\":\"scim_resource_already_exists\","
+							+ "\"message\":\"A group with displayName: " + displayName + " already exists.\"}");
+				}
+				else {
+					FakeUaaServer.respond(exchange, 200, "{\"id\":\"g1\",\"displayName\":\"" + displayName
+							+ "\",\"meta\":{\"version\":\"" + version.incrementAndGet() + "\"}}");
+				}
+			}
+		});
+
+		settings = new UaaConnectionSettings();
+		settings.setConflictRetryBackoff(1);
+
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(settings));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		helper.close();
+		server.stop();
+	}
+
+	private UaaGroup group(String displayName) {
+		UaaGroup group = new UaaGroup();
+		group.setId("g1");
+		group.setDisplayName(displayName);
+		group.setMeta(Collections.singletonMap("version", String.valueOf(version.get())));
+
+		return group;
+	}
+
+	private Callable<UaaGroup> reread() {
+		return new Callable<UaaGroup>() {
+			public UaaGroup call() {
+				rereads.incrementAndGet();
+				return deleted.get() ? null : group("old");
+			}
+		};
+	}
+
+	private Callable<ListenableFuture<UaaGroup>> asyncReread() {
+		final Callable<UaaGroup> reread = reread();
+		return new Callable<ListenableFuture<UaaGroup>>() {
+			public ListenableFuture<UaaGroup> call() throws Exception {
+				return UaaFutures.immediate(reread.call());
+			}
+		};
+	}
+
+	private static UaaScimUpdate<UaaGroup, UaaGroup> rename(final String displayName) {
+		return new UaaScimUpdate<UaaGroup, UaaGroup>() {
+			public UaaGroup apply(UaaGroup current) {
+				if (displayName.equals(current.getDisplayName())) {
+					return null;
+				}
+
+				UaaGroup request = new UaaGroup();
+				request.setId(current.getId());
+				request.setDisplayName(displayName);
+				request.setMeta(current.getMeta());
+
+				return request;
+			}
+		};
+	}
+
+	private UaaGroup update(String displayName) {
+		return helper.updateScimObject("/Groups/{id}", UaaGroup.class, group("old"), reread(), rename(displayName),
+				"g1");
+	}
+
+	@Test
+	public void testNoConflict() throws Exception {
+		UaaGroup updated = update("new");
+
+		assertEquals("new", updated.getDisplayName());
+		assertEquals(0, rereads.get());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testUnnecessaryUpdate() throws Exception {
+		UaaGroup current = group("old");
+
+		assertSame(current, helper.updateScimObject("/Groups/{id}", UaaGroup.class, current, reread(),
+				rename("old"), "g1"));
+		assertEquals(0, server.getRequests().size());
+	}
+
+	@Test
+	public void testVersionConflictsAreRetried() throws Exception {
+		concurrentChanges.set(2);
+
+		UaaGroup updated = update("new");
+
+		assertEquals("new", updated.getDisplayName());
+		assertEquals(2, rereads.get());
+		assertEquals(3, server.getRequests().size());
+	}
+
+	@Test
+	public void testRetriesAreBounded() throws Exception {
+		settings.setMaxConflictRetries(2);
+		concurrentChanges.set(10);
+
+		try {
+			update("new");
+			fail("Expected a version conflict");
+		}
+		catch (HttpClientErrorException e) {
+			assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+		}
+
+		assertEquals(2, rereads.get());
+		assertEquals(3, server.getRequests().size());
+	}
+
+	@Test
+	public void testBackoffGrows() throws Exception {
+		settings.setConflictRetryBackoff(100);
+		concurrentChanges.set(2);
+
+		long start = System.currentTimeMillis();
+		update("new");
+
+		// the delays are at least half of 100 and 200 milliseconds
+		assertTrue(System.currentTimeMillis() - start >= 150);
+	}
+
+	@Test
+	public void testDuplicateNameIsNotRetried() throws Exception {
+		try {
+			update("dup");
+			fail("Expected a conflict");
+		}
+		catch (HttpClientErrorException e) {
+			assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+		}
+
+		assertEquals(0, rereads.get());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testConflictMentioningVersionIsNotRetried() throws Exception {
+		try {
+			update("version2");
+			fail("Expected a conflict");
+		}
+		catch (HttpClientErrorException e) {
+			assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+		}
+
+		assertEquals(0, rereads.get());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testDeletedWhileRetrying() throws Exception {
+		concurrentChanges.set(1);
+		deleted.set(true);
+
+		try {
+			update("new");
+			fail("Expected the object not to be found");
+		}
+		catch (HttpClientErrorException e) {
+			assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+		}
+
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testAsyncVersionConflictsAreRetried() throws Exception {
+		concurrentChanges.set(2);
+
+		UaaGroup updated = helper.updateScimObjectAsync("/Groups/{id}", UaaGroup.class,
+				UaaFutures.immediate(group("old")), asyncReread(), rename("new"), "g1").get();
+
+		assertEquals("new", updated.getDisplayName());
+		assertEquals(2, rereads.get());
+		assertEquals(3, server.getRequests().size());
+	}
+
+	@Test
+	public void testAsyncDeletedWhileRetrying() throws Exception {
+		concurrentChanges.set(1);
+		deleted.set(true);
+
+		ListenableFuture<UaaGroup> updated = helper.updateScimObjectAsync("/Groups/{id}", UaaGroup.class,
+				UaaFutures.immediate(group("old")), asyncReread(), rename("new"), "g1");
+
+		try {
+			updated.get();
+			fail("Expected the object not to be found");
+		}
+		catch (ExecutionException e) {
+			assertEquals(HttpStatus.NOT_FOUND, ((HttpClientErrorException) e.getCause()).getStatusCode());
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.AsyncUaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.UaaConnection;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the lifecycle of shared connections against a server that records the port each request came from, which
+ * tells whether two requests went over the same pooled HTTP connection
+ */
+public class UaaConnectionRegistryTest {
+	private static final UaaCredentials CREDS = new UaaCredentials("client", "secret");
+
+	private static final FilterRequest ALL = new FilterRequestBuilder().build();
+
+	private FakeUaaServer server;
+
+	private final List<Integer> clientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+	private final UaaConnectionRegistry registry = new UaaConnectionRegistry();
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				FakeUaaServer.respond(exchange, 200, "{\"resources\":[],\"startIndex\":1,\"itemsPerPage\":0,"
+						+ "\"totalResults\":0}");
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	private UaaConnection getConnection() throws IOException {
+		return registry.getConnection(server.getUrl(), CREDS, new UaaConnectionSettings());
+	}
+
+	private int lastClientPort() {
+		return clientPorts.get(clientPorts.size() - 1);
+	}
+
+	@Test
+	public void testSharedUntilLastHandleClosed() throws Exception {
+		UaaConnection connection = getConnection();
+		AsyncUaaConnection asyncConnection = registry.getAsyncConnection(server.getUrl(), CREDS,
+				new UaaConnectionSettings());
+		assertEquals(1, registry.size());
+
+		connection.userOperations().getUsers(ALL);
+		int port = lastClientPort();
+
+		// the pools stay open for the remaining handle, and the blocking one's connection is reused
+		connection.close();
+		assertEquals(1, registry.size());
+
+		asyncConnection.userOperations().getUsers(ALL).get();
+		connection = getConnection();
+		connection.userOperations().getUsers(ALL);
+		assertEquals(port, lastClientPort());
+
+		asyncConnection.close();
+		connection.close();
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testClosedTwiceThenReacquired() throws Exception {
+		UaaConnection first = getConnection();
+		UaaConnection second = getConnection();
+
+		first.userOperations().getUsers(ALL);
+		int port = lastClientPort();
+
+		// closing a handle twice must not release the other handle's share
+		first.close();
+		first.close();
+		assertEquals(1, registry.size());
+
+		second.userOperations().getUsers(ALL);
+		assertEquals(port, lastClientPort());
+
+		try {
+			first.userOperations();
+			fail("Expected a closed handle to be unusable");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+
+		second.close();
+		assertEquals(0, registry.size());
+
+		// the old pool is gone, so a new handle gets a new one
+		UaaConnection third = getConnection();
+		third.userOperations().getUsers(ALL);
+		assertFalse(port == lastClientPort());
+		assertEquals(1, registry.size());
+
+		third.close();
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testDifferentSettingsRejected() throws Exception {
+		UaaConnection connection = getConnection();
+
+		UaaConnectionSettings settings = new UaaConnectionSettings();
+		settings.setMaxRequestsInFlight(5);
+
+		try {
+			registry.getAsyncConnection(server.getUrl(), CREDS, settings);
+			fail("Expected a connection with different settings to be refused");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+
+		// equal settings, and different credentials, are fine
+		getConnection().close();
+		registry.getConnection(server.getUrl(), new UaaCredentials("other", "secret"), settings).close();
+
+		connection.close();
+		assertEquals(0, registry.size());
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.Continuation;
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.SettableFuture;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+
+public class UaaFuturesTest {
+
+	private static void assertFailsWith(Class<? extends Throwable> type, ListenableFuture<?> future)
+			throws Exception {
+		try {
+			future.get();
+			fail("Expected the future to fail with " + type.getSimpleName());
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), type.isInstance(e.getCause()));
+		}
+	}
+
+	@Test
+	public void testSettableFutureCompletesOnce() throws Exception {
+		SettableFuture<String> future = new SettableFuture<String>();
+		assertFalse(future.isDone());
+
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("Expected the future to time out");
+		}
+		catch (TimeoutException e) {
+			// expected
+		}
+
+		assertTrue(future.set("first"));
+		assertFalse(future.set("second"));
+		assertFalse(future.setException(new IllegalStateException()));
+		assertFalse(future.cancel(true));
+
+		assertTrue(future.isDone());
+		assertEquals("first", future.get());
+	}
+
+	@Test
+	public void testSettableFutureCancel() throws Exception {
+		SettableFuture<String> future = new SettableFuture<String>();
+		assertTrue(future.cancel(true));
+		assertFalse(future.set("late"));
+
+		assertTrue(future.isCancelled());
+		try {
+			future.get();
+			fail("Expected the future to be cancelled");
+		}
+		catch (CancellationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testThen() throws Exception {
+		SettableFuture<String> source = new SettableFuture<String>();
+		ListenableFuture<Integer> length = UaaFutures.then(source, new Continuation<String, Integer>() {
+			public ListenableFuture<Integer> apply(String result) {
+				return UaaFutures.immediate(result.length());
+			}
+		});
+
+		assertFalse(length.isDone());
+		source.set("three");
+		assertEquals(Integer.valueOf(5), length.get());
+	}
+
+	@Test
+	public void testThenFailures() throws Exception {
+		Continuation<String, String> failing = new Continuation<String, String>() {
+			public ListenableFuture<String> apply(String result) throws Exception {
+				throw new IllegalArgumentException(result);
+			}
+		};
+
+		assertFailsWith(IllegalArgumentException.class, UaaFutures.then(UaaFutures.immediate("x"), failing));
+
+		SettableFuture<String> source = new SettableFuture<String>();
+		source.setException(new IllegalStateException());
+		assertFailsWith(IllegalStateException.class, UaaFutures.then(source, failing));
+	}
+
+	@Test
+	public void testAll() throws Exception {
+		SettableFuture<String> first = new SettableFuture<String>();
+		SettableFuture<Integer> second = new SettableFuture<Integer>();
+
+		ListenableFuture<List<Object>> all = UaaFutures.all(first, second);
+
+		// completion order does not change the order of the results
+		second.set(2);
+		assertFalse(all.isDone());
+		first.set("one");
+
+		assertEquals(Arrays.<Object> asList("one", 2), all.get());
+		assertEquals(Collections.emptyList(), UaaFutures.all().get());
+	}
+
+	@Test
+	public void testAllFailsOnFirstFailure() throws Exception {
+		SettableFuture<String> first = new SettableFuture<String>();
+		SettableFuture<String> second = new SettableFuture<String>();
+
+		ListenableFuture<List<Object>> all = UaaFutures.all(first, second);
+		second.setException(new IllegalStateException());
+
+		assertFailsWith(IllegalStateException.class, all);
+	}
+
+	@Test
+	public void testSubmit() throws Exception {
+		final Thread caller = Thread.currentThread();
+		Callable<Thread> currentThread = new Callable<Thread>() {
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		};
+
+		Executor rejecting = new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+
+		// a rejected call runs on the calling thread
+		assertSame(caller, UaaFutures.submit(currentThread, rejecting).get());
+
+		Executor newThread = new Executor() {
+			public void execute(Runnable command) {
+				new Thread(command).start();
+			}
+		};
+
+		assertFalse(caller == UaaFutures.submit(currentThread, newThread).get());
+
+		ListenableFuture<Object> failed = UaaFutures.submit(new Callable<Object>() {
+			public Object call() {
+				throw new IllegalStateException();
+			}
+		}, newThread);
+		assertFailsWith(IllegalStateException.class, failed);
+	}
+
+	@Test
+	public void testDiscardAndForward() throws Exception {
+		assertNull(UaaFutures.discard(UaaFutures.immediate("ignored")).get());
+
+		SettableFuture<String> target = new SettableFuture<String>();
+		UaaFutures.forward(UaaFutures.immediate("value"), target);
+		assertEquals("value", target.get());
+	}
+}
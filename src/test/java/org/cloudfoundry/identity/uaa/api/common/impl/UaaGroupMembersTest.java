@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaUnknownUsersException;
+import org.cloudfoundry.identity.uaa.api.group.AsyncUaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.impl.AsyncUaaGroupOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.group.impl.UaaGroupOperationsImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Tests that the group member operations refuse usernames that do not exist instead of writing the group without
+ * them. The server holds one group, whose members are alice and a nested group. Every user exists except those whose
+ * names start with "missing".
+ */
+public class UaaGroupMembersTest {
+	private static final Pattern USER_NAME = Pattern.compile("username eq \"([^\"]*)\"");
+
+	private static final String GROUP = "{\"id\":\"g1\",\"displayName\":\"readers\",\"members\":["
+			+ "{\"value\":\"id-alice\",\"type\":\"USER\"},{\"value\":\"g2\",\"type\":\"GROUP\"}],"
+			+ "\"meta\":{\"version\":\"1\"}}";
+
+	private FakeUaaServer server;
+
+	private final List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+
+	private UaaConnectionHelper helper;
+
+	private UaaGroupOperations operations;
+
+	private AsyncUaaGroupOperations asyncOperations;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String body = FakeUaaServer.read(exchange);
+				if ("PUT".equals(exchange.getRequestMethod())) {
+					writes.add(body);
+					FakeUaaServer.respond(exchange, 200, GROUP);
+				}
+				else if (exchange.getRequestURI().getPath().startsWith("/Groups")) {
+					FakeUaaServer.respond(exchange, 200, GROUP);
+				}
+				else {
+					StringBuilder resources = new StringBuilder();
+					Matcher matcher = USER_NAME.matcher(exchange.getRequestURI().getQuery());
+					while (matcher.find()) {
+						String userName = matcher.group(1);
+						if (!userName.startsWith("missing")) {
+							resources.append(resources.length() == 0 ? "" : ",").append("{\"id\":\"id-")
+									.append(userName).append("\",\"userName\":\"").append(userName).append("\"}");
+						}
+					}
+
+					FakeUaaServer.respond(exchange, 200, "{\"resources\":[" + resources + "]}");
+				}
+			}
+		});
+
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(new UaaConnectionSettings()));
+		operations = new UaaGroupOperationsImpl(helper);
+		asyncOperations = new AsyncUaaGroupOperationsImpl(helper);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		helper.close();
+		server.stop();
+	}
+
+	private static void assertUnknown(List<String> userNames, Call call) throws Exception {
+		try {
+			call.call();
+			fail("Expected " + userNames + " to be refused");
+		}
+		catch (UaaUnknownUsersException e) {
+			assertEquals(userNames, e.getUserNames());
+		}
+	}
+
+	private static void assertUnknown(List<String> userNames, ListenableFuture<?> future) throws Exception {
+		try {
+			future.get();
+			fail("Expected " + userNames + " to be refused");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof UaaUnknownUsersException);
+			assertEquals(userNames, ((UaaUnknownUsersException) e.getCause()).getUserNames());
+		}
+	}
+
+	/**
+	 * A call expected to throw
+	 */
+	private interface Call {
+		void call();
+	}
+
+	@Test
+	public void testAddMember() throws Exception {
+		operations.addMember("g1", "bob");
+		asyncOperations.addMember("g1", "carol").get();
+
+		assertEquals(2, writes.size());
+		assertTrue(writes.get(0), writes.get(0).contains("\"id-bob\""));
+		assertTrue(writes.get(1), writes.get(1).contains("\"id-carol\""));
+	}
+
+	@Test
+	public void testUnknownMemberRefused() throws Exception {
+		assertUnknown(Arrays.asList("missing1"), new Call() {
+			public void call() {
+				operations.addMember("g1", "missing1");
+			}
+		});
+		assertUnknown(Arrays.asList("missing2"), new Call() {
+			public void call() {
+				operations.deleteMember("g1", "missing2");
+			}
+		});
+
+		assertUnknown(Arrays.asList("missing3"), asyncOperations.addMember("g1", "missing3"));
+		assertUnknown(Arrays.asList("missing4"), asyncOperations.deleteMember("g1", "missing4"));
+
+		assertEquals(Collections.emptyList(), writes);
+	}
+
+	@Test
+	public void testUnknownMembersRefused() throws Exception {
+		final List<String> userNames = Arrays.asList("bob", "missing1", "alice", "missing2");
+		List<String> unknown = Arrays.asList("missing1", "missing2");
+
+		assertUnknown(unknown, new Call() {
+			public void call() {
+				operations.addMembers("g1", userNames);
+			}
+		});
+		assertUnknown(unknown, new Call() {
+			public void call() {
+				operations.removeMembers("g1", userNames);
+			}
+		});
+
+		assertUnknown(unknown, asyncOperations.addMembers("g1", userNames));
+		assertUnknown(unknown, asyncOperations.removeMembers("g1", userNames));
+
+		assertEquals(Collections.emptyList(), writes);
+	}
+
+	@Test
+	public void testSetMembers() throws Exception {
+		operations.setMembers("g1", new HashSet<String>(Arrays.asList("bob")));
+
+		// alice is replaced by bob, and the nested group is kept
+		assertEquals(1, writes.size());
+		assertTrue(writes.get(0), writes.get(0).contains("\"members\":[\"g2\",\"id-bob\"]"));
+	}
+
+	@Test
+	public void testSetMembersWithUnknownUsersRefused() throws Exception {
+		// alice is a member; if the lookup of the missing users were ignored, she would be removed
+		final Set<String> userNames = new LinkedHashSet<String>(Arrays.asList("alice", "missing1"));
+		List<String> unknown = Arrays.asList("missing1");
+
+		assertUnknown(unknown, new Call() {
+			public void call() {
+				operations.setMembers("g1", userNames);
+			}
+		});
+		assertUnknown(unknown, asyncOperations.setMembers("g1", userNames));
+
+		assertEquals(Collections.emptyList(), writes);
+	}
+}
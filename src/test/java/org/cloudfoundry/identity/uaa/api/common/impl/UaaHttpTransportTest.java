@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.http.pool.PoolStats;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the connection pool of {@link UaaHttpTransport} against a server that records the port each request came
+ * from
+ */
+public class UaaHttpTransportTest {
+	private FakeUaaServer server;
+
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	private UaaConnectionSettings settings;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				FakeUaaServer.respond(exchange, 200, "{}");
+			}
+		});
+
+		settings = new UaaConnectionSettings();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	private String get(UaaHttpTransport transport) throws IOException {
+		return transport.getRestTemplate().getForObject(server.getUrl() + "/Users", String.class);
+	}
+
+	@Test
+	public void testSettingsReachPool() throws Exception {
+		settings.setMaxConnectionsTotal(7);
+		settings.setMaxConnectionsPerRoute(3);
+
+		UaaHttpTransport transport = new UaaHttpTransport(settings);
+		try {
+			assertEquals(7, transport.getConnectionManager().getMaxTotal());
+			assertEquals(3, transport.getConnectionManager().getDefaultMaxPerRoute());
+		}
+		finally {
+			transport.close();
+		}
+	}
+
+	@Test
+	public void testConnectionsAreReused() throws Exception {
+		UaaHttpTransport transport = new UaaHttpTransport(settings);
+		try {
+			for (int i = 0; i < 5; i++) {
+				assertEquals("{}", get(transport));
+			}
+
+			assertEquals(1, clientPorts.size());
+
+			PoolStats stats = transport.getConnectionManager().getTotalStats();
+			assertEquals(0, stats.getLeased());
+			assertEquals(1, stats.getAvailable());
+		}
+		finally {
+			transport.close();
+		}
+	}
+
+	@Test
+	public void testCloseStopsEvictorAndPool() throws Exception {
+		settings.setIdleConnectionTimeout(60000);
+
+		UaaHttpTransport transport = new UaaHttpTransport(settings);
+		get(transport);
+		assertTrue(transport.isEvictingIdleConnections());
+
+		transport.close();
+
+		assertFalse(transport.isEvictingIdleConnections());
+		assertEquals(0, transport.getConnectionManager().getTotalStats().getAvailable());
+
+		try {
+			get(transport);
+			fail("Expected the closed pool to refuse requests");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNoEvictorWithoutIdleTimeout() throws Exception {
+		settings.setIdleConnectionTimeout(0);
+
+		UaaHttpTransport transport = new UaaHttpTransport(settings);
+		try {
+			assertFalse(transport.isEvictingIdleConnections());
+		}
+		finally {
+			transport.close();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.SortOrder;
+import org.junit.Test;
+
+/**
+ * Tests {@link UaaKeysetIterable} over a fake query whose results are the IDs "id-01" to "id-<code>total</code>"
+ */
+public class UaaKeysetIterableTest {
+	private static final Pattern AFTER = Pattern.compile("id gt \"([^\"]*)\"");
+
+	/**
+	 * Pages through the IDs by key, recording the query for every page fetched. A page holds the IDs greater than the
+	 * one in its filter, if any, and its total is the number of such IDs, as for any other filter.
+	 */
+	private static class Ids extends UaaKeysetIterable<String> {
+		private final int total;
+
+		private final List<FilterRequest> pages = new ArrayList<FilterRequest>();
+
+		private boolean keyless;
+
+		Ids(FilterRequest request, int total) {
+			super(request, "id", 10, null, 0);
+			this.total = total;
+		}
+
+		@Override
+		protected PagedResult<String> fetch(FilterRequest page) {
+			pages.add(page);
+
+			Matcher matcher = AFTER.matcher(page.getFilter() == null ? "" : page.getFilter());
+			String after = matcher.find() ? matcher.group(1) : "";
+
+			List<String> matches = new ArrayList<String>();
+			for (int i = 1; i <= total; i++) {
+				String id = String.format("id-%02d", i);
+				if (id.compareTo(after) > 0) {
+					matches.add(id);
+				}
+			}
+
+			IdsResult result = new IdsResult();
+			result.setResources(new ArrayList<String>(matches.subList(0, Math.min(page.getCount(), matches.size()))));
+			result.setStartIndex(page.getStart());
+			result.setItemsPerPage(page.getCount());
+			result.setTotalResults(matches.size());
+
+			return result;
+		}
+
+		@Override
+		protected Object keyOf(String resource) {
+			return keyless ? null : resource;
+		}
+	}
+
+	private static class IdsResult extends PagedResult<String> {
+	}
+
+	private static List<String> ids(int from, int to) {
+		List<String> ids = new ArrayList<String>();
+		for (int i = from; i <= to; i++) {
+			ids.add(String.format("id-%02d", i));
+		}
+
+		return ids;
+	}
+
+	private static List<String> toList(Iterable<String> iterable) {
+		List<String> ids = new ArrayList<String>();
+		for (String id : iterable) {
+			ids.add(id);
+		}
+
+		return ids;
+	}
+
+	@Test
+	public void testPagesByKey() throws Exception {
+		Ids ids = new Ids(FilterRequestBuilder.showAll(), 25);
+
+		assertEquals(ids(1, 25), toList(ids));
+		assertEquals(3, ids.pages.size());
+
+		assertNull(ids.pages.get(0).getFilter());
+		assertEquals("id gt \"id-10\"", ids.pages.get(1).getFilter());
+		assertEquals("id gt \"id-20\"", ids.pages.get(2).getFilter());
+
+		for (FilterRequest page : ids.pages) {
+			assertEquals(1, page.getStart());
+			assertEquals(10, page.getCount());
+			assertEquals("id", page.getSortBy());
+			assertEquals(SortOrder.ASCENDING, page.getSortOrder());
+		}
+	}
+
+	@Test
+	public void testKeepsFilterStartAndSortOfRequest() throws Exception {
+		FilterRequest request = new FilterRequestBuilder().present("userName").start(50).count(20)
+				.sortBy("userName", SortOrder.DESCENDING).build();
+		Ids ids = new Ids(request, 25);
+
+		assertEquals(ids(1, 25), toList(ids));
+		assertEquals(2, ids.pages.size());
+
+		assertEquals("userName pr", ids.pages.get(0).getFilter());
+		assertEquals(1, ids.pages.get(0).getStart());
+		assertEquals("(userName pr) and id gt \"id-20\"", ids.pages.get(1).getFilter());
+		assertEquals(1, ids.pages.get(1).getStart());
+		assertEquals("id", ids.pages.get(1).getSortBy());
+	}
+
+	@Test
+	public void testExactlyOnePage() throws Exception {
+		Ids ids = new Ids(FilterRequestBuilder.showAll(), 10);
+
+		assertEquals(ids(1, 10), toList(ids));
+		assertEquals(1, ids.pages.size());
+	}
+
+	@Test
+	public void testAddsKeyToProjection() throws Exception {
+		Ids ids = new Ids(new FilterRequestBuilder().attributes("userName").build(), 15);
+		toList(ids);
+
+		for (FilterRequest page : ids.pages) {
+			assertEquals(Arrays.asList("userName", "id"), page.getAttributes());
+		}
+
+		ids = new Ids(new FilterRequestBuilder().attributes("id", "userName").build(), 5);
+		toList(ids);
+
+		assertEquals(Arrays.asList("id", "userName"), ids.pages.get(0).getAttributes());
+
+		ids = new Ids(FilterRequestBuilder.showAll(), 5);
+		toList(ids);
+
+		assertNull(ids.pages.get(0).getAttributes());
+	}
+
+	@Test
+	public void testResultWithoutKey() throws Exception {
+		Ids ids = new Ids(FilterRequestBuilder.showAll(), 25);
+		ids.keyless = true;
+
+		try {
+			toList(ids);
+			fail("Expected the missing key to be reported");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("Result has no id to page by", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFetchAllWalksPagesInOrder() throws Exception {
+		Ids ids = new Ids(FilterRequestBuilder.showAll(), 25);
+
+		assertEquals(ids(1, 25), ids.fetchAll(4));
+		assertEquals(3, ids.pages.size());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the lookup pool a helper uses when the settings name no executor
+ */
+public class UaaLookupExecutorTest {
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private UaaConnectionHelper helper;
+
+	@Before
+	public void setUp() throws Exception {
+		UaaConnectionSettings settings = new UaaConnectionSettings();
+		settings.setMaxConnectionsPerRoute(2);
+
+		helper = new UaaConnectionHelper(new URL("http://localhost"), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(settings));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		helper.close();
+	}
+
+	private Callable<Thread> lookup(final boolean block) {
+		return new Callable<Thread>() {
+			public Thread call() throws Exception {
+				if (block) {
+					release.await();
+				}
+
+				return Thread.currentThread();
+			}
+		};
+	}
+
+	@Test
+	public void testBoundedByConnectionsPerRoute() throws Exception {
+		Future<Thread> first = helper.fork(lookup(true));
+		Future<Thread> second = helper.fork(lookup(true));
+
+		// both pool threads are busy, so this one runs straight away on the calling thread
+		Future<Thread> third = helper.fork(lookup(false));
+		assertSame(Thread.currentThread(), UaaConnectionHelper.join(third));
+
+		release.countDown();
+		assertNotSame(Thread.currentThread(), UaaConnectionHelper.join(first));
+		assertNotSame(Thread.currentThread(), UaaConnectionHelper.join(second));
+	}
+
+	@Test
+	public void testForkAfterClose() throws Exception {
+		helper.close();
+
+		assertSame(Thread.currentThread(), UaaConnectionHelper.join(helper.fork(lookup(false))));
+	}
+
+	@Test
+	public void testThreadsAreDaemons() throws Exception {
+		Thread thread = UaaConnectionHelper.join(helper.fork(lookup(false)));
+
+		assertTrue(thread.isDaemon());
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.junit.Test;
+
+/**
+ * Tests {@link UaaPagedIterable} over a fake query whose results are the numbers 1 to <code>total</code>
+ */
+public class UaaPagedIterableTest {
+
+	/**
+	 * Runs every task on the calling thread, so that reading ahead happens before the iterator returns
+	 */
+	private static final Executor CALLER_RUNS = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * Pages through the numbers 1 to <code>total</code>, returning at most <code>maxPageSize</code> of them per page
+	 * and recording the start index of every page fetched. Fetching the page at <code>failAt</code> fails, and each
+	 * fetch takes <code>delay</code> milliseconds.
+	 */
+	private static class Numbers extends UaaPagedIterable<Integer> {
+		private final int total;
+
+		private final int maxPageSize;
+
+		private final List<Integer> starts = Collections.synchronizedList(new ArrayList<Integer>());
+
+		private volatile int failAt;
+
+		private volatile long delay;
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private final AtomicInteger maxInFlight = new AtomicInteger();
+
+		Numbers(FilterRequest request, int total, int maxPageSize) {
+			super(request, 10);
+			this.total = total;
+			this.maxPageSize = maxPageSize;
+		}
+
+		Numbers(FilterRequest request, int total, Executor executor, int prefetchDepth) {
+			super(request, 10, executor, prefetchDepth);
+			this.total = total;
+			this.maxPageSize = Integer.MAX_VALUE;
+		}
+
+		@Override
+		protected PagedResult<Integer> fetch(FilterRequest page) {
+			starts.add(page.getStart());
+			if (page.getStart() == failAt) {
+				throw new IllegalStateException("Failed to fetch page at " + failAt);
+			}
+
+			int fetching = inFlight.incrementAndGet();
+			try {
+				synchronized (maxInFlight) {
+					maxInFlight.set(Math.max(maxInFlight.get(), fetching));
+				}
+
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				inFlight.decrementAndGet();
+			}
+
+			List<Integer> resources = new ArrayList<Integer>();
+			int count = Math.min(page.getCount(), maxPageSize);
+			for (int i = page.getStart(); i < page.getStart() + count && i <= total; i++) {
+				resources.add(i);
+			}
+
+			NumbersResult result = new NumbersResult();
+			result.setResources(resources);
+			result.setStartIndex(page.getStart());
+			result.setItemsPerPage(page.getCount());
+			result.setTotalResults(total);
+
+			return result;
+		}
+	}
+
+	private static class NumbersResult extends PagedResult<Integer> {
+	}
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (int i = from; i <= to; i++) {
+			numbers.add(i);
+		}
+
+		return numbers;
+	}
+
+	private static List<Integer> toList(Iterable<Integer> iterable) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (Integer i : iterable) {
+			numbers.add(i);
+		}
+
+		return numbers;
+	}
+
+	@Test
+	public void testIteratesEveryPage() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 25, 100);
+
+		assertEquals(range(1, 25), toList(numbers));
+		assertEquals(Arrays.asList(1, 11, 21), numbers.starts);
+	}
+
+	@Test
+	public void testFetchesLazily() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 25, 100);
+
+		Iterator<Integer> iterator = numbers.iterator();
+		assertEquals(0, numbers.starts.size());
+
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(Integer.valueOf(i), iterator.next());
+		}
+
+		assertEquals(1, numbers.starts.size());
+
+		iterator.next();
+		assertEquals(2, numbers.starts.size());
+	}
+
+	@Test
+	public void testStopsAtTotal() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 20, 100);
+
+		Iterator<Integer> iterator = numbers.iterator();
+		for (int i = 0; i < 20; i++) {
+			iterator.next();
+		}
+
+		assertFalse(iterator.hasNext());
+		assertEquals(Arrays.asList(1, 11), numbers.starts);
+
+		try {
+			iterator.next();
+			fail("Expected the iterator to be exhausted");
+		}
+		catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testEmptyResult() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 0, 100);
+
+		assertFalse(numbers.iterator().hasNext());
+		assertEquals(Arrays.asList(1), numbers.starts);
+	}
+
+	@Test
+	public void testStartAndCountOfRequest() throws Exception {
+		Numbers numbers = new Numbers(new FilterRequestBuilder().start(5).count(7).build(), 20, 100);
+
+		assertEquals(range(5, 20), toList(numbers));
+		assertEquals(Arrays.asList(5, 12, 19), numbers.starts);
+	}
+
+	@Test
+	public void testShortPages() throws Exception {
+		// the server may cap the page size below the count asked for
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 25, 4);
+
+		assertEquals(range(1, 25), toList(numbers));
+		assertEquals(Arrays.asList(1, 5, 9, 13, 17, 21, 25), numbers.starts);
+	}
+
+	@Test
+	public void testEachIteratorStartsAgain() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 15, 100);
+
+		assertEquals(range(1, 15), toList(numbers));
+		assertEquals(range(1, 15), toList(numbers));
+		assertEquals(Arrays.asList(1, 11, 1, 11), numbers.starts);
+	}
+	@Test
+	public void testReadAheadIsBounded() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 100, CALLER_RUNS, 2);
+
+		Iterator<Integer> iterator = numbers.iterator();
+		assertEquals(0, numbers.starts.size());
+
+		// the page being iterated, and two more
+		iterator.hasNext();
+		assertEquals(Arrays.asList(1, 11, 21), numbers.starts);
+
+		for (int i = 0; i < 10; i++) {
+			iterator.next();
+		}
+
+		iterator.hasNext();
+		assertEquals(Arrays.asList(1, 11, 21, 31), numbers.starts);
+	}
+
+	@Test
+	public void testReadAheadInBackground() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 95, executor, 3);
+
+			assertEquals(range(1, 95), toList(numbers));
+			assertEquals(10, numbers.starts.size());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testReadAheadFailure() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 100, CALLER_RUNS, 2);
+		numbers.failAt = 21;
+
+		Iterator<Integer> iterator = numbers.iterator();
+		for (int i = 1; i <= 20; i++) {
+			assertEquals(Integer.valueOf(i), iterator.next());
+		}
+
+		try {
+			iterator.hasNext();
+			fail("Expected the failure to fetch the third page");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("Failed to fetch page at 21", e.getMessage());
+		}
+
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadAheadNeedsExecutor() throws Exception {
+		new Numbers(FilterRequestBuilder.showAll(), 100, null, 2);
+	}
+	@Test
+	public void testFetchAll() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 95, executor, 0);
+			numbers.delay = 20;
+
+			assertEquals(range(1, 95), numbers.fetchAll(3));
+			assertEquals(10, numbers.starts.size());
+			assertTrue(numbers.maxInFlight.get() > 1);
+			assertTrue(numbers.maxInFlight.get() <= 3);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFetchAllToConsumer() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 95, executor, 0);
+			final Set<Integer> delivered = new TreeSet<Integer>();
+
+			int count = numbers.fetchAll(4, new ResourceConsumer<Integer>() {
+				public void accept(Integer resource) {
+					delivered.add(resource);
+				}
+			});
+
+			assertEquals(95, count);
+			assertEquals(range(1, 95), new ArrayList<Integer>(delivered));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFetchAllWithShortPages() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 25, 4);
+
+		assertEquals(range(1, 25), numbers.fetchAll(1));
+		assertEquals(Arrays.asList(1, 5, 9, 13, 17, 21, 25), numbers.starts);
+	}
+
+	@Test
+	public void testFetchAllEmpty() throws Exception {
+		Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 0, 100);
+
+		assertEquals(Collections.<Integer> emptyList(), numbers.fetchAll(1));
+		assertEquals(Arrays.asList(1), numbers.starts);
+	}
+
+	@Test
+	public void testFetchAllFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Numbers numbers = new Numbers(FilterRequestBuilder.showAll(), 95, executor, 0);
+			numbers.failAt = 51;
+
+			numbers.fetchAll(4);
+			fail("Expected the failure to fetch a page");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("Failed to fetch page at 51", e.getMessage());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFetchAllConcurrentlyNeedsExecutor() throws Exception {
+		new Numbers(FilterRequestBuilder.showAll(), 100, 100).fetchAll(2);
+	}
+}
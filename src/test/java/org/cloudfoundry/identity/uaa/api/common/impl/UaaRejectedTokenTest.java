@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Tests that a request whose access token the server rejects is sent once more with a new token, and only once. The
+ * server rejects the tokens it has been told to, as UAA does once a token has been revoked or its signing key rotated.
+ */
+public class UaaRejectedTokenTest {
+	private FakeUaaServer server;
+
+	private final Set<String> rejected = Collections.synchronizedSet(new HashSet<String>());
+
+	private final List<String> tokens = Collections.synchronizedList(new ArrayList<String>());
+
+	private UaaConnectionHelper helper;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+				String token = authorization.substring(authorization.indexOf(' ') + 1);
+				tokens.add(token);
+
+				if (rejected.contains(token)) {
+					exchange.getResponseHeaders().set("WWW-Authenticate",
+							"Bearer error=\"invalid_token\", error_description=\"Token has been revoked\"");
+					FakeUaaServer.respond(exchange, 401, "{\"error\":\"invalid_token\","
+							+ "\"error_description\":\"Token has been revoked\"}");
+				}
+				else {
+					FakeUaaServer.respond(exchange, 200, "{\"resources\":[{\"id\":\"u1\"}],\"startIndex\":1,"
+							+ "\"itemsPerPage\":1,\"totalResults\":1}");
+				}
+			}
+		});
+
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(new UaaConnectionSettings()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		helper.close();
+		server.stop();
+	}
+
+	private List<UaaUserRef> getResources() {
+		final List<UaaUserRef> resources = new ArrayList<UaaUserRef>();
+		helper.getResources("/Users", UaaUserRef.class, new ResourceConsumer<UaaUserRef>() {
+			public void accept(UaaUserRef resource) {
+				resources.add(resource);
+			}
+		});
+
+		return resources;
+	}
+
+	private static void assertUnauthorized(HttpClientErrorException e) {
+		assertEquals(HttpStatus.UNAUTHORIZED, e.getStatusCode());
+	}
+
+	@Test
+	public void testRejectedTokenReplayedOnce() throws Exception {
+		rejected.add("token-1");
+
+		List<UaaUserRef> resources = getResources();
+
+		assertEquals(1, resources.size());
+		assertEquals("u1", resources.get(0).getId());
+		assertEquals(Arrays.asList("token-1", "token-2"), tokens);
+		assertEquals(2, server.getGrantTypes().size());
+	}
+
+	@Test
+	public void testSecondRejectionSurfaced() throws Exception {
+		rejected.add("token-1");
+		rejected.add("token-2");
+
+		try {
+			getResources();
+			fail("Expected the second rejection to be surfaced");
+		}
+		catch (HttpClientErrorException e) {
+			assertUnauthorized(e);
+		}
+
+		assertEquals(Arrays.asList("token-1", "token-2"), tokens);
+		assertEquals(2, server.getGrantTypes().size());
+	}
+
+	@Test
+	public void testOtherUnauthorizedNotReplayed() throws Exception {
+		server.stop();
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				FakeUaaServer.respond(exchange, 401, "{\"error\":\"unauthorized\","
+						+ "\"error_description\":\"Bad credentials\"}");
+			}
+		});
+		helper.close();
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(new UaaConnectionSettings()));
+
+		try {
+			helper.get("/Users", Map.class);
+			fail("Expected the rejection to be surfaced");
+		}
+		catch (HttpClientErrorException e) {
+			assertUnauthorized(e);
+		}
+
+		assertEquals(Arrays.asList("GET /Users"), server.getRequests());
+		assertEquals(1, server.getGrantTypes().size());
+	}
+
+	@Test
+	public void testAsyncRejectedTokenReplayedOnce() throws Exception {
+		rejected.add("token-1");
+		assertEquals(1, ((List<?>) helper.getAsync("/Users", Map.class).get().get("resources")).size());
+
+		rejected.add("token-2");
+		rejected.add("token-3");
+		try {
+			helper.getAsync("/Users", Map.class).get();
+			fail("Expected the second rejection to be surfaced");
+		}
+		catch (ExecutionException e) {
+			assertUnauthorized((HttpClientErrorException) e.getCause());
+		}
+
+		assertEquals(Arrays.asList("token-1", "token-2", "token-2", "token-3"), tokens);
+	}
+}
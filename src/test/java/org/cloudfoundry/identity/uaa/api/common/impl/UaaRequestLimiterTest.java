@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.cloudfoundry.identity.uaa.api.common.impl.UaaFutures.SettableFuture;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+public class UaaRequestLimiterTest {
+	private final List<SettableFuture<String>> started = new ArrayList<SettableFuture<String>>();
+
+	private Callable<ListenableFuture<String>> request() {
+		return new Callable<ListenableFuture<String>>() {
+			public ListenableFuture<String> call() {
+				SettableFuture<String> future = new SettableFuture<String>();
+				started.add(future);
+				return future;
+			}
+		};
+	}
+
+	@Test
+	public void testLimitsRequestsInFlight() throws Exception {
+		UaaRequestLimiter limiter = new UaaRequestLimiter(2);
+
+		List<ListenableFuture<String>> results = new ArrayList<ListenableFuture<String>>();
+		for (int i = 0; i < 5; i++) {
+			results.add(limiter.submit(request()));
+		}
+
+		assertEquals(2, started.size());
+
+		started.get(0).set("first");
+		assertEquals("first", results.get(0).get());
+		assertEquals(3, started.size());
+
+		started.get(1).setException(new IllegalStateException());
+		assertEquals(4, started.size());
+
+		started.get(2).set("third");
+		started.get(3).set("fourth");
+		assertEquals(5, started.size());
+		assertFalse(results.get(4).isDone());
+
+		started.get(4).set("fifth");
+		assertEquals("fifth", results.get(4).get());
+	}
+
+	@Test
+	public void testFailedStartPassesSlotOn() throws Exception {
+		UaaRequestLimiter limiter = new UaaRequestLimiter(1);
+		limiter.submit(request());
+
+		ListenableFuture<String> failed = limiter.submit(new Callable<ListenableFuture<String>>() {
+			public ListenableFuture<String> call() {
+				throw new IllegalStateException("not sent");
+			}
+		});
+		ListenableFuture<String> next = limiter.submit(request());
+
+		started.get(0).set("first");
+
+		try {
+			failed.get();
+			fail("Expected the request that could not be sent to fail");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		assertEquals(2, started.size());
+		started.get(1).set("next");
+		assertEquals("next", next.get());
+	}
+
+	@Test
+	public void testSynchronousCompletionDoesNotRecurse() throws Exception {
+		UaaRequestLimiter limiter = new UaaRequestLimiter(1);
+		limiter.submit(request());
+
+		final int count = 100000;
+		ListenableFuture<Integer> last = null;
+		for (int i = 0; i < count; i++) {
+			final int value = i;
+			last = limiter.submit(new Callable<ListenableFuture<Integer>>() {
+				public ListenableFuture<Integer> call() {
+					return UaaFutures.immediate(value);
+				}
+			});
+		}
+
+		started.get(0).set("first");
+
+		assertEquals(Integer.valueOf(count - 1), last.get());
+
+		// every slot has been given back
+		limiter.submit(request());
+		assertEquals(2, started.size());
+	}
+
+	@Test
+	public void testCancelQueuedRequest() throws Exception {
+		UaaRequestLimiter limiter = new UaaRequestLimiter(1);
+		limiter.submit(request());
+
+		ListenableFuture<String> queued = limiter.submit(request());
+		assertTrue(queued.cancel(true));
+
+		ListenableFuture<String> next = limiter.submit(request());
+		started.get(0).set("first");
+
+		// the cancelled request is never sent
+		assertEquals(2, started.size());
+		started.get(1).set("next");
+		assertEquals("next", next.get());
+
+		try {
+			queued.get();
+			fail("Expected the request to be cancelled");
+		}
+		catch (CancellationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCancelStartedRequest() throws Exception {
+		UaaRequestLimiter limiter = new UaaRequestLimiter(1);
+
+		// like the futures of the asynchronous HTTP client, this one never calls back once it is cancelled
+		final SettableFuture<String> silent = new SettableFuture<String>() {
+			@Override
+			public void addCallback(ListenableFutureCallback<? super String> callback) {
+				// never called back
+			}
+		};
+
+		ListenableFuture<String> result = limiter.submit(new Callable<ListenableFuture<String>>() {
+			public ListenableFuture<String> call() {
+				return silent;
+			}
+		});
+		ListenableFuture<String> next = limiter.submit(request());
+		assertTrue(started.isEmpty());
+
+		assertTrue(result.cancel(true));
+		assertTrue(silent.isCancelled());
+
+		// the slot of the cancelled request is handed on
+		assertEquals(1, started.size());
+		started.get(0).set("next");
+		assertEquals("next", next.get());
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+public class UaaResourceStreamReaderTest {
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * A response whose body is the given JSON, counting how much of it has been read
+	 */
+	private static class JsonResponse implements ClientHttpResponse {
+		private final byte[] body;
+
+		private int read;
+
+		JsonResponse(String json) {
+			this.body = json.getBytes(Charset.forName("UTF-8"));
+		}
+
+		public InputStream getBody() {
+			return new ByteArrayInputStream(body) {
+				@Override
+				public synchronized int read(byte[] b, int off, int len) {
+					int n = super.read(b, off, len);
+					read = pos;
+					return n;
+				}
+
+				@Override
+				public synchronized int read() {
+					int n = super.read();
+					read = pos;
+					return n;
+				}
+			};
+		}
+
+		public HttpHeaders getHeaders() {
+			return new HttpHeaders();
+		}
+
+		public HttpStatus getStatusCode() {
+			return HttpStatus.OK;
+		}
+
+		public int getRawStatusCode() {
+			return 200;
+		}
+
+		public String getStatusText() {
+			return "OK";
+		}
+
+		public void close() {
+		}
+	}
+
+	private static class Collector<T> implements ResourceConsumer<T> {
+		private final List<T> resources = new ArrayList<T>();
+
+		public void accept(T resource) {
+			resources.add(resource);
+		}
+	}
+
+	@Test
+	public void testReadsPage() throws Exception {
+		Collector<UaaUser> users = new Collector<UaaUser>();
+		JsonResponse response = new JsonResponse("{\"startIndex\":11,\"resources\":["
+				+ "{\"id\":\"a\",\"userName\":\"alice\",\"unknown\":{\"x\":[1,2]}},"
+				+ "{\"id\":\"b\",\"userName\":\"bob\"}],"
+				+ "\"ignored\":[{\"y\":null}],\"itemsPerPage\":10,\"totalResults\":12,"
+				+ "\"schemas\":[\"urn:scim:schemas:core:1.0\"]}");
+
+		PagedResult<UaaUser> result = new UaaResourceStreamReader<UaaUser>(mapper, UaaUser.class, users)
+				.extractData(response);
+
+		assertEquals(2, users.resources.size());
+		assertEquals("a", users.resources.get(0).getId());
+		assertEquals("bob", users.resources.get(1).getUserName());
+
+		assertNull(result.getResources());
+		assertEquals(11, result.getStartIndex());
+		assertEquals(10, result.getItemsPerPage());
+		assertEquals(12, result.getTotalResults());
+		assertEquals(Arrays.asList("urn:scim:schemas:core:1.0"), result.getSchemas());
+	}
+
+	@Test
+	public void testEmptyPage() throws Exception {
+		Collector<UaaUser> users = new Collector<UaaUser>();
+
+		PagedResult<UaaUser> result = new UaaResourceStreamReader<UaaUser>(mapper, UaaUser.class, users)
+				.extractData(new JsonResponse("{\"resources\":[],\"totalResults\":0}"));
+
+		assertEquals(0, users.resources.size());
+		assertEquals(0, result.getTotalResults());
+	}
+
+	@Test
+	public void testHandsOverResourcesAsTheyAreRead() throws Exception {
+		StringBuilder json = new StringBuilder("{\"resources\":[");
+		for (int i = 0; i < 1000; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(i).append("\",\"userName\":\"user")
+					.append(i).append("\"}");
+		}
+
+		json.append("],\"totalResults\":1000}");
+
+		final JsonResponse response = new JsonResponse(json.toString());
+		final List<Integer> readAtFirst = new ArrayList<Integer>();
+		Collector<UaaUser> users = new Collector<UaaUser>() {
+			@Override
+			public void accept(UaaUser resource) {
+				if (readAtFirst.isEmpty()) {
+					readAtFirst.add(response.read);
+				}
+
+				super.accept(resource);
+			}
+		};
+
+		new UaaResourceStreamReader<UaaUser>(mapper, UaaUser.class, users).extractData(response);
+
+		assertEquals(1000, users.resources.size());
+		assertTrue(readAtFirst.get(0) < response.body.length / 2);
+	}
+
+	@Test(expected = HttpMessageNotReadableException.class)
+	public void testNotAPage() throws Exception {
+		new UaaResourceStreamReader<UaaUser>(mapper, UaaUser.class, new Collector<UaaUser>())
+				.extractData(new JsonResponse("[]"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedPage() throws Exception {
+		new UaaResourceStreamReader<UaaUser>(mapper, UaaUser.class, new Collector<UaaUser>())
+				.extractData(new JsonResponse("{\"resources\":[{\"id\":\"a\"},"));
+	}
+}
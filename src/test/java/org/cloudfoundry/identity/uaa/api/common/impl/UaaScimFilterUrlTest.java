@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.SortOrder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the query strings built by {@link UaaConnectionHelper#buildScimFilterUrl(String, FilterRequest)}
+ */
+public class UaaScimFilterUrlTest {
+	private UaaConnectionHelper helper;
+
+	@Before
+	public void setUp() throws Exception {
+		helper = new UaaConnectionHelper(new URL("http://localhost"), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(new UaaConnectionSettings()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		helper.close();
+	}
+
+	@Test
+	public void testNoSort() throws Exception {
+		assertEquals("/Users", helper.buildScimFilterUrl("/Users", new FilterRequestBuilder().build()));
+	}
+
+	@Test
+	public void testSortOrderDefaultsToAscending() throws Exception {
+		assertEquals("/Users?sortBy=userName&sortOrder=ascending",
+				helper.buildScimFilterUrl("/Users", new FilterRequestBuilder().sortBy("userName").build()));
+	}
+
+	@Test
+	public void testSortFollowsOtherParameters() throws Exception {
+		FilterRequestBuilder builder = new FilterRequestBuilder().attributes("id").equals("active", true).start(11)
+				.count(10).sortBy("meta.lastModified", SortOrder.DESCENDING);
+
+		assertEquals("/Users?attributes=id&filter=active eq true&startIndex=11&count=10"
+				+ "&sortBy=meta.lastModified&sortOrder=descending",
+				helper.buildScimFilterUrl("/Users", builder.build()));
+	}
+}
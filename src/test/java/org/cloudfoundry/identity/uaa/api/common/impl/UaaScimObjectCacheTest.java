@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroup;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link UaaScimObjectCache}, and its use for conditional GETs by {@link UaaConnectionHelper}. The server holds
+ * a single group, "g1", and answers with 304 when asked for a version it still has.
+ */
+public class UaaScimObjectCacheTest {
+	private static final byte[] BODY = { 1, 2, 3 };
+
+	private FakeUaaServer server;
+
+	private final AtomicInteger version = new AtomicInteger();
+
+	private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<String>());
+
+	private UaaConnectionHelper helper;
+
+	@After
+	public void tearDown() throws Exception {
+		if (helper != null) {
+			helper.close();
+			server.stop();
+		}
+	}
+
+	private UaaConnectionHelper getHelper(int cacheSize) throws IOException {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("PUT".equals(exchange.getRequestMethod())) {
+					FakeUaaServer.read(exchange);
+					version.incrementAndGet();
+				}
+				else if (!exchange.getRequestURI().getPath().equals("/Groups/g1")) {
+					FakeUaaServer.respond(exchange, 404, "{\"error\":\"scim_resource_not_found\"}");
+					return;
+				}
+
+				String etag = "\"" + version.get() + "\"";
+				String requested = exchange.getRequestHeaders().getFirst("If-None-Match");
+				ifNoneMatch.add(requested);
+
+				if (etag.equals(requested)) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+
+				FakeUaaServer.respond(exchange, 200, "{\"id\":\"g1\",\"displayName\":\"group\",\"meta\":{\"version\":\""
+						+ version.get() + "\"}}");
+			}
+		});
+
+		UaaConnectionSettings settings = new UaaConnectionSettings();
+		settings.setScimObjectCacheSize(cacheSize);
+
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(settings));
+		return helper;
+	}
+
+	private UaaGroup getGroup(String id) {
+		return helper.getScimObject("/Groups/{id}", UaaGroup.class, null, id);
+	}
+
+	@Test
+	public void testGetAndPut() throws Exception {
+		UaaScimObjectCache cache = new UaaScimObjectCache(10);
+		assertNull(cache.get("/Groups/g1"));
+
+		cache.put("/Groups/g1", "3", BODY);
+		assertEquals("3", cache.get("/Groups/g1").getVersion());
+		assertArrayEquals(BODY, cache.get("/Groups/g1").getBody());
+
+		cache.remove("/Groups/g1");
+		assertNull(cache.get("/Groups/g1"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		UaaScimObjectCache cache = new UaaScimObjectCache(2);
+		cache.put("/Groups/g1", "1", BODY);
+		cache.put("/Groups/g2", "1", BODY);
+
+		// reading g1 makes g2 the least recently used
+		cache.get("/Groups/g1");
+		cache.put("/Groups/g3", "1", BODY);
+
+		assertNotNull(cache.get("/Groups/g1"));
+		assertNull(cache.get("/Groups/g2"));
+		assertNotNull(cache.get("/Groups/g3"));
+	}
+
+	@Test
+	public void testDisabledOrUnversioned() throws Exception {
+		UaaScimObjectCache cache = new UaaScimObjectCache(0);
+		assertFalse(cache.isEnabled());
+
+		cache.put("/Groups/g1", "1", BODY);
+		assertNull(cache.get("/Groups/g1"));
+
+		cache = new UaaScimObjectCache(10);
+		cache.put("/Groups/g1", null, BODY);
+		assertNull(cache.get("/Groups/g1"));
+	}
+
+	@Test
+	public void testRevalidatesCachedCopy() throws Exception {
+		getHelper(10);
+
+		UaaGroup first = getGroup("g1");
+		UaaGroup second = getGroup("g1");
+
+		assertEquals(Arrays.asList(null, "\"0\""), ifNoneMatch);
+		assertEquals("group", second.getDisplayName());
+		assertEquals("0", second.getMeta().get("version"));
+
+		// every caller gets its own copy
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void testChangedOnServer() throws Exception {
+		getHelper(10);
+
+		getGroup("g1");
+		version.incrementAndGet();
+
+		assertEquals("1", getGroup("g1").getMeta().get("version"));
+		assertEquals(Arrays.asList(null, "\"0\""), ifNoneMatch);
+	}
+
+	@Test
+	public void testRevalidatesCopyOfCaller() throws Exception {
+		getHelper(0);
+
+		UaaGroup current = getGroup("g1");
+
+		assertSame(current, helper.getScimObject("/Groups/{id}", UaaGroup.class, current, "g1"));
+		assertEquals(Arrays.asList(null, "\"0\""), ifNoneMatch);
+	}
+
+	@Test
+	public void testCacheDisabled() throws Exception {
+		getHelper(0);
+
+		getGroup("g1");
+		getGroup("g1");
+
+		assertEquals(Arrays.asList(null, null), ifNoneMatch);
+	}
+
+	@Test
+	public void testForgetsChangedObject() throws Exception {
+		getHelper(10);
+
+		UaaGroup group = getGroup("g1");
+		helper.putScimObject("/Groups/{id}", group, UaaGroup.class, "g1");
+		getGroup("g1");
+
+		assertEquals(Arrays.asList(null, null, null), ifNoneMatch);
+	}
+
+	@Test
+	public void testMissingObject() throws Exception {
+		getHelper(10);
+
+		assertNull(getGroup("missing"));
+	}
+}
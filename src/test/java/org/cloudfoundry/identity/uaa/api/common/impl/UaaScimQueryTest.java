@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.client.UaaClientOperations;
+import org.cloudfoundry.identity.uaa.api.client.impl.UaaClientOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.common.model.PagedResult;
+import org.cloudfoundry.identity.uaa.api.common.model.ResourceConsumer;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequest;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.FilterRequestBuilder;
+import org.cloudfoundry.identity.uaa.api.common.model.expr.SortOrder;
+import org.cloudfoundry.identity.uaa.api.group.UaaGroupOperations;
+import org.cloudfoundry.identity.uaa.api.group.impl.UaaGroupOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.group.model.UaaGroupRef;
+import org.cloudfoundry.identity.uaa.api.user.UaaUserOperations;
+import org.cloudfoundry.identity.uaa.api.user.impl.UaaUserOperationsImpl;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUser;
+import org.cloudfoundry.identity.uaa.api.user.model.UaaUserRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.StringUtils;
+
+/**
+ * Tests the query strings the read operations send, and how they read what comes back. The server answers every
+ * request with the same response and records the path and decoded query string of each.
+ */
+public class UaaScimQueryTest {
+	private FakeUaaServer server;
+
+	private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+	private volatile int status = 200;
+
+	private volatile String response;
+
+	private UaaConnectionHelper helper;
+
+	private UaaUserOperations users;
+
+	private UaaGroupOperations groups;
+
+	private UaaClientOperations clients;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String query = exchange.getRequestURI().getQuery();
+				queries.add(exchange.getRequestURI().getPath() + (query == null ? "" : "?" + query));
+				FakeUaaServer.respond(exchange, status, response);
+			}
+		});
+
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(new UaaConnectionSettings()));
+		users = new UaaUserOperationsImpl(helper);
+		groups = new UaaGroupOperationsImpl(helper);
+		clients = new UaaClientOperationsImpl(helper);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		helper.close();
+		server.stop();
+	}
+
+	private static String page(int totalResults, String... resources) {
+		return "{\"resources\":[" + StringUtils.arrayToCommaDelimitedString(resources) + "],\"startIndex\":1,"
+				+ "\"itemsPerPage\":" + resources.length + ",\"totalResults\":" + totalResults + ","
+				+ "\"schemas\":[\"urn:scim:schemas:core:1.0\"]}";
+	}
+
+	@Test
+	public void testGetUsersIntoConsumer() throws Exception {
+		response = page(2, "{\"id\":\"u1\",\"userName\":\"alice\"}", "{\"id\":\"u2\",\"userName\":\"bob\"}");
+
+		final List<String> userNames = new ArrayList<String>();
+		ResourceConsumer<UaaUser> consumer = new ResourceConsumer<UaaUser>() {
+			public void accept(UaaUser user) {
+				userNames.add(user.getUserName());
+			}
+		};
+		PagedResult<UaaUser> result = users.getUsers(new FilterRequestBuilder().startsWith("username", "a").count(2)
+				.build(), consumer);
+
+		assertEquals(Arrays.asList("/Users?filter=username sw \"a\"&count=2"), queries);
+		assertEquals(Arrays.asList("alice", "bob"), userNames);
+		assertEquals(2, result.getTotalResults());
+		assertEquals(2, result.getItemsPerPage());
+	}
+
+	@Test
+	public void testCountAsksForOneId() throws Exception {
+		response = page(42, "{\"id\":\"u1\"}");
+
+		FilterRequest request = new FilterRequestBuilder().equals("active", true).count(100)
+				.sortBy("userName", SortOrder.DESCENDING).attributes("userName", "emails").build();
+
+		assertEquals(42, users.countUsers(request));
+		assertEquals(42, groups.countGroups(request));
+		assertEquals(42, clients.countClients(request));
+
+		assertEquals(Arrays.asList("/Users?attributes=id&filter=active eq true&startIndex=1&count=1",
+				"/Groups?attributes=id&filter=active eq true&startIndex=1&count=1",
+				"/oauth/clients?attributes=client_id&filter=active eq true&startIndex=1&count=1"), queries);
+	}
+
+	@Test
+	public void testExists() throws Exception {
+		FilterRequest request = new FilterRequestBuilder().equals("username", "alice").build();
+
+		response = page(1, "{\"id\":\"u1\"}");
+		assertTrue(users.exists(request));
+		assertTrue(groups.exists(request));
+		assertTrue(clients.exists(request));
+
+		response = page(0);
+		assertFalse(users.exists(request));
+		assertFalse(groups.exists(request));
+		assertFalse(clients.exists(request));
+
+		assertEquals("/Users?attributes=id&filter=username eq \"alice\"&startIndex=1&count=1", queries.get(0));
+		assertEquals(6, queries.size());
+	}
+
+	@Test
+	public void testUserRefs() throws Exception {
+		response = page(1, "{\"id\":\"u1\",\"userName\":\"alice\"}");
+
+		PagedResult<UaaUserRef> result = users.getUserRefs(new FilterRequestBuilder().attributes("emails")
+				.equals("username", "alice").build());
+
+		assertEquals(Arrays.asList("/Users?attributes=id,userName&filter=username eq \"alice\""), queries);
+		UaaUserRef ref = result.getResources().iterator().next();
+		assertEquals("u1", ref.getId());
+		assertEquals("alice", ref.getUserName());
+		assertEquals(1, result.getTotalResults());
+	}
+
+	@Test
+	public void testGroupRefs() throws Exception {
+		response = page(1, "{\"id\":\"g1\",\"displayName\":\"readers\"}");
+
+		PagedResult<UaaGroupRef> result = groups.getGroupRefs(new FilterRequestBuilder().startsWith("displayName",
+				"read").count(10).build());
+
+		assertEquals(Arrays.asList("/Groups?attributes=id,displayName&filter=displayName sw \"read\"&count=10"),
+				queries);
+		UaaGroupRef ref = result.getResources().iterator().next();
+		assertEquals("g1", ref.getId());
+		assertEquals("readers", ref.getDisplayName());
+	}
+
+	@Test
+	public void testUserByNameWithAttributes() throws Exception {
+		response = page(1, "{\"id\":\"u1\",\"userName\":\"alice\"}");
+
+		UaaUser user = users.getUserByName("alice", "id", "userName");
+
+		assertEquals(Arrays.asList("/Users?attributes=id,userName&filter=username eq \"alice\""), queries);
+		assertEquals("u1", user.getId());
+		assertEquals("alice", user.getUserName());
+		assertNull(user.getEmails());
+	}
+
+	@Test
+	public void testUserByNameWithoutAttributes() throws Exception {
+		response = page(0);
+
+		assertNull(users.getUserByName("alice"));
+		assertEquals(Arrays.asList("/Users?filter=username eq \"alice\""), queries);
+	}
+
+	@Test
+	public void testById() throws Exception {
+		response = "{\"id\":\"u1\",\"userName\":\"alice\",\"meta\":{\"version\":\"3\"}}";
+		assertEquals("alice", users.getUserById("u1").getUserName());
+
+		response = "{\"id\":\"g1\",\"displayName\":\"readers\",\"meta\":{\"version\":\"3\"}}";
+		assertEquals("readers", groups.getGroupById("g1").getDisplayName());
+
+		assertEquals(Arrays.asList("/Users/u1", "/Groups/g1"), queries);
+	}
+
+	@Test
+	public void testByIdNotFound() throws Exception {
+		status = 404;
+		response = "{\"error\":\"scim_resource_not_found\",\"message\":\"User u1 does not exist\"}";
+
+		assertNull(users.getUserById("u1"));
+		assertNull(groups.getGroupById("g1"));
+		assertEquals(Arrays.asList("/Users/u1", "/Groups/g1"), queries);
+	}
+}
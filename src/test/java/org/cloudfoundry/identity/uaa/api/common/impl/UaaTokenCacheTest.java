@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.junit.Test;
+
+public class UaaTokenCacheTest {
+	private static final UaaCredentials CREDS = new UaaCredentials("client", "secret");
+
+	private final UaaConnectionSettings settings = new UaaConnectionSettings();
+
+	private UaaTokenManager acquire(UaaTokenCache cache, String host) throws Exception {
+		return cache.acquire(new URL("http://" + host), CREDS, settings);
+	}
+
+	@Test
+	public void testSharedBySameKey() throws Exception {
+		UaaTokenCache cache = new UaaTokenCache(10);
+
+		UaaTokenManager manager = acquire(cache, "a");
+		assertSame(manager, acquire(cache, "a"));
+		assertNotSame(manager, acquire(cache, "b"));
+		assertNotSame(manager, cache.acquire(new URL("http://a"), new UaaCredentials("client", "other"), settings));
+
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testKeyedByRenewalSettings() throws Exception {
+		UaaTokenCache cache = new UaaTokenCache(10);
+		UaaTokenManager manager = acquire(cache, "a");
+
+		UaaConnectionSettings other = new UaaConnectionSettings();
+		other.setTokenRefreshFraction(0.5);
+		UaaTokenManager early = cache.acquire(new URL("http://a"), CREDS, other);
+		assertNotSame(manager, early);
+
+		other = new UaaConnectionSettings();
+		other.setTokenRefreshFraction(0.5);
+		other.setTokenRefreshJitter(0);
+		assertNotSame(early, cache.acquire(new URL("http://a"), CREDS, other));
+
+		// settings that do not affect renewal do not matter
+		other = new UaaConnectionSettings();
+		other.setPageSize(settings.getPageSize() + 1);
+		assertSame(manager, cache.acquire(new URL("http://a"), CREDS, other));
+	}
+
+	@Test
+	public void testUnusedManagersEvictedFirst() throws Exception {
+		UaaTokenCache cache = new UaaTokenCache(2);
+
+		UaaTokenManager a = acquire(cache, "a");
+		UaaTokenManager b = acquire(cache, "b");
+
+		// b is more recently used than a, but nobody is using it any more and it holds no token
+		b.release();
+		acquire(cache, "c");
+
+		assertEquals(2, cache.size());
+		assertSame(a, acquire(cache, "a"));
+		assertNotSame(b, acquire(cache, "b"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvictedWhenAllInUse() throws Exception {
+		UaaTokenCache cache = new UaaTokenCache(2);
+
+		UaaTokenManager a = acquire(cache, "a");
+		UaaTokenManager b = acquire(cache, "b");
+
+		// acquiring a again makes b the least recently used
+		assertSame(a, acquire(cache, "a"));
+		acquire(cache, "c");
+
+		assertEquals(2, cache.size());
+		assertSame(a, acquire(cache, "a"));
+
+		// b keeps working for its users, but is not handed out again
+		UaaTokenManager replacement = acquire(cache, "b");
+		assertNotSame(b, replacement);
+		b.release();
+	}
+
+	@Test
+	public void testReleasedByEveryUser() throws Exception {
+		UaaTokenCache cache = new UaaTokenCache(10);
+
+		UaaTokenManager manager = acquire(cache, "a");
+		acquire(cache, "a");
+
+		manager.release();
+		manager.release();
+
+		try {
+			manager.release();
+			fail("Expected a manager to be released no more often than it was acquired");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
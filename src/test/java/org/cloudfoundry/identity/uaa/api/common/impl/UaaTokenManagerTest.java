@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenGrantType;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaTokenStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * Tests {@link UaaTokenManager} against a server that records the grant type of every token request
+ */
+public class UaaTokenManagerTest {
+	private static final int THREADS = 8;
+
+	private FakeUaaServer server;
+
+	private UaaConnectionSettings settings;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				FakeUaaServer.respond(exchange, 404, "{}");
+			}
+		});
+
+		settings = new UaaConnectionSettings();
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		server.stop();
+	}
+
+	/**
+	 * Run the same call on many threads at once
+	 * 
+	 * @return the result of each call
+	 */
+	private <T> List<T> concurrently(final Callable<T> call) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(new Callable<T>() {
+				public T call() throws Exception {
+					start.await();
+					return call.call();
+				}
+			}));
+		}
+
+		start.countDown();
+
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+
+		return results;
+	}
+
+	/**
+	 * Have the manager obtain a token that has already expired
+	 */
+	private void obtainExpiredToken(UaaTokenManager manager) throws Exception {
+		server.setTokenLifetime(0);
+		OAuth2AccessToken token = manager.getAccessToken();
+		server.setTokenLifetime(3600);
+
+		while (!token.isExpired()) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testExpiredTokenRenewedOnce() throws Exception {
+		final UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret"),
+				settings);
+
+		obtainExpiredToken(manager);
+		server.setTokenDelay(200);
+
+		List<String> values = concurrently(new Callable<String>() {
+			public String call() {
+				return manager.getAccessToken().getValue();
+			}
+		});
+
+		assertEquals(2, server.getGrantTypes().size());
+		for (String value : values) {
+			assertEquals("token-2", value);
+		}
+	}
+
+	@Test
+	public void testRejectedTokenReplacedOnce() throws Exception {
+		final UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret"),
+				settings);
+
+		final OAuth2AccessToken rejected = manager.getAccessToken();
+		server.setTokenDelay(200);
+
+		List<String> values = concurrently(new Callable<String>() {
+			public String call() {
+				return manager.replaceRejectedToken(rejected.getValue()).getValue();
+			}
+		});
+
+		assertEquals(Arrays.asList("client_credentials", "client_credentials"), server.getGrantTypes());
+		for (String value : values) {
+			assertEquals("token-2", value);
+		}
+	}
+
+	/**
+	 * Wait for the server to have received the given number of token requests
+	 * 
+	 * @return the milliseconds waited
+	 */
+	private long awaitTokenRequests(int count, long timeout) throws Exception {
+		long start = System.currentTimeMillis();
+		while (server.getGrantTypes().size() < count && System.currentTimeMillis() - start < timeout) {
+			Thread.sleep(10);
+		}
+
+		return System.currentTimeMillis() - start;
+	}
+
+	@Test
+	public void testBackgroundRenewalAtRefreshFraction() throws Exception {
+		settings.setTokenRefreshFraction(0.5);
+		settings.setTokenRefreshJitter(0);
+		server.setTokenLifetime(2);
+
+		UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret"),
+				settings);
+		assertEquals("token-1", manager.getAccessToken().getValue());
+
+		// half of the two second lifetime
+		long waited = awaitTokenRequests(2, 3000);
+		assertEquals(2, server.getGrantTypes().size());
+		assertTrue("Renewed after " + waited + "ms", waited >= 800 && waited < 1800);
+
+		// the server has seen the request, but its response may not have been handled yet
+		long start = System.currentTimeMillis();
+		while (!"token-2".equals(manager.getAccessToken().getValue()) && System.currentTimeMillis() - start < 1000) {
+			Thread.sleep(10);
+		}
+		assertEquals("token-2", manager.getAccessToken().getValue());
+
+		// once released, the token is no longer renewed in the background
+		manager.release();
+		Thread.sleep(1500);
+		assertEquals(2, server.getGrantTypes().size());
+	}
+
+	private static void assertStatistics(long obtained, long refreshed, long failedRefreshes, UaaTokenManager manager) {
+		UaaTokenStatistics statistics = manager.getStatistics();
+		assertEquals(obtained, statistics.getObtained());
+		assertEquals(refreshed, statistics.getRefreshed());
+		assertEquals(failedRefreshes, statistics.getFailedRefreshes());
+	}
+
+	@Test
+	public void testClientCredentialsNeverRefreshed() throws Exception {
+		UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret"),
+				settings);
+		assertEquals(UaaTokenGrantType.client_credentials, manager.getGrantType());
+
+		// the server sends a refresh token anyway, but a client credentials grant must not use it
+		obtainExpiredToken(manager);
+		manager.replaceRejectedToken(manager.getAccessToken().getValue());
+
+		assertEquals(Arrays.asList("client_credentials", "client_credentials", "client_credentials"),
+				server.getGrantTypes());
+		assertStatistics(3, 0, 0, manager);
+	}
+
+	@Test
+	public void testPasswordGrantRefreshed() throws Exception {
+		UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret",
+				"alice", "password"), settings);
+		assertEquals(UaaTokenGrantType.password, manager.getGrantType());
+
+		obtainExpiredToken(manager);
+		assertEquals("token-2", manager.getAccessToken().getValue());
+
+		assertEquals(Arrays.asList("password", "refresh_token"), server.getGrantTypes());
+		assertStatistics(1, 1, 0, manager);
+	}
+
+	@Test
+	public void testFailedRefreshFallsBackToNewToken() throws Exception {
+		UaaTokenManager manager = new UaaTokenManager(server.getUrl(), new UaaCredentials("client", "secret",
+				"alice", "password"), settings);
+
+		obtainExpiredToken(manager);
+		server.setRefreshRejected(true);
+		assertEquals("token-2", manager.getAccessToken().getValue());
+
+		assertEquals(Arrays.asList("password", "refresh_token", "password"), server.getGrantTypes());
+		assertStatistics(2, 0, 1, manager);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class UaaUserIdCacheTest {
+
+	@Test
+	public void testGetAndPut() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(10, 60000, 60000);
+		assertNull(cache.get("alice"));
+
+		cache.put("alice", "id-alice");
+		assertEquals("id-alice", cache.get("alice").getId());
+
+		cache.put("nobody", null);
+		assertNotNull(cache.get("nobody"));
+		assertNull(cache.get("nobody").getId());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(2, 60000, 60000);
+		cache.put("alice", "id-alice");
+		cache.put("bob", "id-bob");
+
+		// reading alice makes bob the least recently used
+		cache.get("alice");
+		cache.put("carol", "id-carol");
+
+		assertNotNull(cache.get("alice"));
+		assertNull(cache.get("bob"));
+		assertNotNull(cache.get("carol"));
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(10, 50, 60000);
+		cache.put("alice", "id-alice");
+		cache.put("nobody", null);
+
+		Thread.sleep(100);
+
+		assertNull(cache.get("alice"));
+		assertNotNull(cache.get("nobody"));
+	}
+
+	@Test
+	public void testNegativeExpiry() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(10, 60000, 50);
+		cache.put("nobody", null);
+
+		Thread.sleep(100);
+
+		assertNull(cache.get("nobody"));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(0, 60000, 60000);
+		cache.put("alice", "id-alice");
+		assertNull(cache.get("alice"));
+
+		cache = new UaaUserIdCache(10, 60000, 0);
+		cache.put("nobody", null);
+		assertNull(cache.get("nobody"));
+	}
+
+	@Test
+	public void testRemoveId() throws Exception {
+		UaaUserIdCache cache = new UaaUserIdCache(10, 60000, 60000);
+		cache.put("alice", "id-alice");
+		cache.put("ALICE", "id-alice");
+		cache.put("bob", "id-bob");
+
+		cache.removeId("id-alice");
+
+		assertNull(cache.get("alice"));
+		assertNull(cache.get("ALICE"));
+		assertEquals("id-bob", cache.get("bob").getId());
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 ECS Team, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.identity.uaa.api.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaConnectionSettings;
+import org.cloudfoundry.identity.uaa.api.common.model.UaaCredentials;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+/**
+ * Tests the batching of {@link UaaConnectionHelper#resolveUserIds(java.util.Collection)} and the caching of user IDs.
+ * Every user exists except those whose names start with "missing"; the server reports user names in lower case. The
+ * server can also be told to fail every request with a given status.
+ */
+public class UaaUserIdResolutionTest {
+	private static final Pattern USER_NAME = Pattern.compile("username eq \"([^\"]*)\"");
+
+	private FakeUaaServer server;
+
+	private final List<Integer> urlLengths = Collections.synchronizedList(new ArrayList<Integer>());
+
+	private volatile int failureStatus;
+
+	private UaaConnectionSettings settings;
+
+	private UaaConnectionHelper helper;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FakeUaaServer(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				urlLengths.add(server.getUrl().toExternalForm().length()
+						+ exchange.getRequestURI().toASCIIString().length());
+
+				if (failureStatus != 0) {
+					FakeUaaServer.respond(exchange, failureStatus, "{\"error\":\"failed\"}");
+					return;
+				}
+
+				StringBuilder resources = new StringBuilder();
+				Matcher matcher = USER_NAME.matcher(exchange.getRequestURI().getQuery());
+				while (matcher.find()) {
+					String userName = matcher.group(1).toLowerCase();
+					if (!userName.startsWith("missing")) {
+						resources.append(resources.length() == 0 ? "" : ",").append("{\"id\":\"id-").append(userName)
+								.append("\",\"userName\":\"").append(userName).append("\"}");
+					}
+				}
+
+				FakeUaaServer.respond(exchange, 200, "{\"resources\":[" + resources + "]}");
+			}
+		});
+
+		settings = new UaaConnectionSettings();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (helper != null) {
+			helper.close();
+		}
+
+		server.stop();
+	}
+
+	private UaaConnectionHelper getHelper() throws IOException {
+		helper = new UaaConnectionHelper(server.getUrl(), new UaaCredentials("client", "secret"),
+				new UaaHttpTransport(settings));
+		return helper;
+	}
+
+	private static List<String> userNames(String prefix, int count) {
+		List<String> userNames = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			userNames.add(prefix + i);
+		}
+
+		return userNames;
+	}
+
+	@Test
+	public void testBatchesStayWithinUrlLength() throws Exception {
+		settings.setMaxFilterUrlLength(500);
+
+		Map<String, String> ids = getHelper().resolveUserIds(userNames("user", 100));
+
+		assertEquals(100, ids.size());
+		assertEquals("id-user42", ids.get("user42"));
+		assertTrue(urlLengths.size() > 1);
+		for (int length : urlLengths) {
+			assertTrue("URL of " + length + " characters", length <= 500);
+		}
+	}
+
+	@Test
+	public void testBatchesHaveAtMostTwoHundredNames() throws Exception {
+		settings.setMaxFilterUrlLength(Integer.MAX_VALUE);
+
+		Map<String, String> ids = getHelper().resolveUserIds(userNames("user", 450));
+
+		assertEquals(450, ids.size());
+		assertEquals(3, server.getRequests().size());
+	}
+
+	@Test
+	public void testMissingAndCachedUsers() throws Exception {
+		UaaConnectionHelper helper = getHelper();
+
+		Map<String, String> ids = helper.resolveUserIds(Arrays.asList("Alice", "missing1", "bob", "Alice"));
+
+		assertEquals(Arrays.asList("Alice", "bob"), new ArrayList<String>(ids.keySet()));
+		assertEquals("id-alice", ids.get("Alice"));
+		assertEquals(1, server.getRequests().size());
+
+		// found and missing users alike are answered from the cache
+		ids = helper.resolveUserIds(Arrays.asList("bob", "missing1"));
+
+		assertEquals(Collections.singletonMap("bob", "id-bob"), ids);
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testAsyncBatches() throws Exception {
+		settings.setMaxFilterUrlLength(500);
+
+		List<String> userNames = userNames("user", 100);
+		userNames.add("missing1");
+
+		Map<String, String> ids = getHelper().resolveUserIdsAsync(userNames).get();
+
+		assertEquals(100, ids.size());
+		assertTrue(server.getRequests().size() > 1);
+	}
+
+	@Test
+	public void testLookupErrorsThrownAndNotCached() throws Exception {
+		UaaConnectionHelper helper = getHelper();
+
+		failureStatus = 500;
+		try {
+			helper.getUserIdByName("alice");
+			fail("Expected the server error to be thrown");
+		}
+		catch (HttpServerErrorException e) {
+			assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatusCode());
+		}
+
+		failureStatus = 0;
+		assertEquals("id-alice", helper.getUserIdByName("alice"));
+		assertEquals(2, server.getRequests().size());
+	}
+
+	@Test
+	public void testNotFoundCached() throws Exception {
+		UaaConnectionHelper helper = getHelper();
+
+		failureStatus = 404;
+		assertNull(helper.getUserIdByName("alice"));
+
+		failureStatus = 0;
+		assertNull(helper.getUserIdByName("alice"));
+		assertNull(helper.getUserIdByName("missing1"));
+		assertEquals(2, server.getRequests().size());
+	}
+}